@@ -0,0 +1,40 @@
+package ca.sahiljain.chess;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Param({"start", "kiwipete", "italian", "rook-endgame", "pawn-endgame", "queen-endgame"})
+    public String position;
+
+    private Position root;
+
+    @Setup
+    public void setUp() {
+        // as a search has it, with the evaluator's table summed as moves are played
+        root = Positions.position(position).copy(PieceSquareEvaluator.DEFAULT.table);
+    }
+
+    @Benchmark
+    public int evaluate() {
+        return PieceSquareEvaluator.DEFAULT.evaluate(root);
+    }
+}
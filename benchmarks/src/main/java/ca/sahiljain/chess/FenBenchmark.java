@@ -0,0 +1,66 @@
+package ca.sahiljain.chess;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FenBenchmark {
+
+    @Param({"start", "kiwipete", "rook-endgame"})
+    public String position;
+
+    private String fen;
+    private Board board;
+    private Position root;
+    private final StringBuilder buffer = new StringBuilder(96);
+
+    @Setup
+    public void setUp() {
+        fen = Positions.fen(position);
+        board = new Board(fen);
+        root = Positions.position(position);
+    }
+
+    @Benchmark
+    public Board parseBoard() {
+        return new Board(fen);
+    }
+
+    @Benchmark
+    public String boardToFen() {
+        return board.toFen();
+    }
+
+    @Benchmark
+    public Position parseToPosition() {
+        return Fen.parse(fen);
+    }
+
+    @Benchmark
+    public String positionToFen() {
+        return Fen.format(root);
+    }
+
+    @Benchmark
+    public StringBuilder writeToBuffer() {
+        buffer.setLength(0);
+        Fen.write(root, buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,70 @@
+package ca.sahiljain.chess;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+
+    @Param({"start", "kiwipete", "italian", "rook-endgame", "pawn-endgame", "queen-endgame"})
+    public String position;
+
+    private Position root;
+    private Player player;
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+    @Setup
+    public void setUp() {
+        root = Positions.position(position);
+        player = root.sideToMove == Position.WHITE ? Player.MAXIMIZER : Player.MINIMIZER;
+    }
+
+    @Benchmark
+    public List<Position> getChildren() {
+        return ChessStatic.getChildren(root, player);
+    }
+
+    @Benchmark
+    public int generateMoves() {
+        return MoveGenerator.generateMoves(root, root.sideToMove, moves, 0);
+    }
+
+    @Benchmark
+    public int generateCaptures() {
+        return MoveGenerator.generateCaptures(root, root.sideToMove, moves, 0);
+    }
+
+    @Benchmark
+    public int generateQuiets() {
+        return MoveGenerator.generateQuiets(root, root.sideToMove, moves, 0);
+    }
+
+    @Benchmark
+    public int makeUnmakeAll() {
+        int end = MoveGenerator.generateMoves(root, root.sideToMove, moves, 0);
+        int sum = 0;
+        for (int i = 0; i < end; i++) {
+            int undo = root.makeMove(moves[i]);
+            sum += root.pieceSquareScore;
+            root.unmakeMove(moves[i], undo);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,79 @@
+package ca.sahiljain.chess;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the leaves of the legal move tree with {@link Perft}. Before measuring, each position is checked against
+ * its published counts, so a benchmark run also catches move generator regressions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PerftBenchmark {
+
+    private static final Map<String, long[]> BASELINE = new HashMap<>();
+
+    static {
+        BASELINE.put("start", new long[]{1, 20, 400, 8902, 197281});
+        BASELINE.put("kiwipete", new long[]{1, 48, 2039, 97862, 4085603});
+        BASELINE.put("rook-endgame", new long[]{1, 14, 191, 2812, 43238});
+    }
+
+    @Param({"start", "kiwipete", "rook-endgame"})
+    public String position;
+
+    @Param({"4"})
+    public int depth;
+
+    private Perft perft;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        perft = new Perft(Positions.position(position), false);
+        long[] expected = BASELINE.get(position);
+        for (int d = 1; d < expected.length && d <= depth; d++) {
+            long actual = perft.count(d);
+            if (actual != expected[d]) {
+                throw new IllegalStateException(
+                        "perft(" + d + ") of " + position + " is " + actual + ", expected " + expected[d]);
+            }
+        }
+    }
+
+    @Benchmark
+    public long perft(Counters counters) {
+        long leaves = perft.count(depth);
+        counters.nodes += leaves;
+        return leaves;
+    }
+}
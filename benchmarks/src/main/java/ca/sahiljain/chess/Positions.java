@@ -0,0 +1,36 @@
+package ca.sahiljain.chess;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The positions every benchmark runs over, by name. Benchmarks take the name as a {@code @Param}.
+ */
+final class Positions {
+
+    static final Map<String, String> FENS = new LinkedHashMap<>();
+
+    static {
+        FENS.put("start", "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        FENS.put("kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        FENS.put("italian", "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 4 4");
+        FENS.put("rook-endgame", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+        FENS.put("pawn-endgame", "8/8/1k6/2p5/2P5/1K6/8/8 w - - 0 1");
+        FENS.put("queen-endgame", "8/5k2/8/3Q4/8/8/2q5/4K3 b - - 0 1");
+    }
+
+    private Positions() {
+    }
+
+    static String fen(String name) {
+        String fen = FENS.get(name);
+        if (fen == null) {
+            throw new IllegalArgumentException("unknown position: " + name);
+        }
+        return fen;
+    }
+
+    static Position position(String name) {
+        return Fen.parse(fen(name));
+    }
+}
@@ -0,0 +1,67 @@
+package ca.sahiljain.chess;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-depth iterative deepening from a cold transposition table. The {@code nodes} counter is reported as a rate,
+ * which is the search speed in nodes per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"start", "kiwipete", "italian", "rook-endgame", "pawn-endgame", "queen-endgame"})
+    public String position;
+
+    @Param({"5"})
+    public int depth;
+
+    private final TranspositionTable table = new TranspositionTable(16);
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        table.clear();
+    }
+
+    @Benchmark
+    public int searchToDepth(Counters counters) {
+        Search search = new Search(Positions.position(position), table, Tablebase.empty(), new SearchOptions(),
+                SearchControl.unlimited());
+        table.newSearch();
+        int move = Move.NONE;
+        for (int d = 1; d <= depth; d++) {
+            move = search.searchRoot(d);
+        }
+        counters.nodes += search.nodes();
+        return move;
+    }
+}
@@ -0,0 +1,94 @@
+package ca.sahiljain.chess;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Analyses started over HTTP, by id. Each one is driven by its own thread, which submits the search's iterations
+ * to the {@link SearchScheduler} like any other search and reports them to the {@link Analysis}. Finished analyses
+ * are kept for {@code retentionMillis} so a client can collect the result, then dropped the next time analyses
+ * are started, read or counted.
+ */
+final class Analyses {
+
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+    private final SearchScheduler scheduler;
+    private final int maxRunning;
+    private final long retentionMillis;
+    private final Map<String, Analysis> analyses = new ConcurrentHashMap<>();
+    private final ExecutorService drivers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "analysis-driver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    Analyses(TranspositionTable table, Tablebase tablebase, SearchScheduler scheduler, int maxRunning,
+             long retentionMillis) {
+        this.table = table;
+        this.tablebase = tablebase;
+        this.scheduler = scheduler;
+        this.maxRunning = maxRunning;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Starts analysing {@code root} within {@code limits}. The search is recorded in {@code metrics} when it
+     * finishes, usually after the request that started it has been answered.
+     *
+     * @throws RejectedExecutionException if {@code maxRunning} analyses are already running
+     */
+    synchronized Analysis start(final Position root, final SearchLimits limits, final RequestMetrics metrics) {
+        if (running() >= maxRunning) {
+            throw new RejectedExecutionException("too many analyses running");
+        }
+        final Analysis analysis = new Analysis(UUID.randomUUID().toString());
+        analyses.put(analysis.id, analysis);
+        drivers.execute(() -> {
+            try {
+                SearchResult result = ChessStatic.search(root, table, tablebase, limits, scheduler, analysis);
+                metrics.searched(result);
+                analysis.finish(result);
+            } catch (RejectedExecutionException e) {
+                analysis.fail("overloaded");
+            } catch (RuntimeException e) {
+                analysis.fail("no move found");
+            }
+        });
+        return analysis;
+    }
+
+    /**
+     * The analysis with {@code id}, or null if there is none or it has expired.
+     */
+    Analysis get(String id) {
+        evictExpired();
+        return analyses.get(id);
+    }
+
+    int running() {
+        evictExpired();
+        int running = 0;
+        for (Analysis analysis : analyses.values()) {
+            if (!analysis.isDone()) {
+                running++;
+            }
+        }
+        return running;
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Analysis> it = analyses.values().iterator(); it.hasNext(); ) {
+            Analysis analysis = it.next();
+            if (analysis.isDone() && now - analysis.finishedAt() > retentionMillis) {
+                it.remove();
+            }
+        }
+    }
+}
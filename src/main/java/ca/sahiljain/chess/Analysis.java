@@ -0,0 +1,171 @@
+package ca.sahiljain.chess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One running or finished analysis started through {@link Analyses}. It keeps a line of JSON for every completed
+ * iteration, so pollers can ask for everything after the last update they saw and wait for the next one. Waiting
+ * pollers hold a future rather than a thread: it completes on the next update, when the analysis is done, or when
+ * their wait runs out.
+ */
+final class Analysis implements SearchListener {
+
+    final String id;
+    private final List<String> updates = new ArrayList<>();
+    private SearchControl control;
+    private boolean stopRequested;
+    private SearchResult best;
+    private String error;
+    private boolean done;
+    private long finishedAt;
+    private final CompletableFuture<SearchResult> result = new CompletableFuture<>();
+    // completed and replaced on every update; pollers waiting for the next one chain on it
+    private CompletableFuture<Void> changed = new CompletableFuture<>();
+
+    Analysis(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public synchronized void started(SearchControl control) {
+        this.control = control;
+        if (stopRequested) {
+            control.stop();
+        }
+    }
+
+    @Override
+    public void iteration(SearchResult result, long elapsedMillis) {
+        CompletableFuture<Void> fired;
+        synchronized (this) {
+            best = result;
+            updates.add(String.format(Locale.ROOT,
+                    "{\"depth\":%d,\"score\":%d,\"pv\":%s,\"nodes\":%d,\"nps\":%d,\"elapsedMs\":%d}",
+                    result.depth, result.score, result.pvJson(), result.nodes,
+                    result.nodes * 1000 / Math.max(1, elapsedMillis), elapsedMillis));
+            fired = changed;
+            changed = new CompletableFuture<>();
+        }
+        // outside the lock, so whatever runs on completion may take its own
+        fired.complete(null);
+    }
+
+    void finish(SearchResult result) {
+        CompletableFuture<Void> fired;
+        synchronized (this) {
+            best = result;
+            done = true;
+            finishedAt = System.currentTimeMillis();
+            fired = changed;
+        }
+        fired.complete(null);
+        this.result.complete(result);
+    }
+
+    void fail(String message) {
+        CompletableFuture<Void> fired;
+        SearchResult last;
+        synchronized (this) {
+            error = message;
+            done = true;
+            finishedAt = System.currentTimeMillis();
+            fired = changed;
+            last = best;
+        }
+        fired.complete(null);
+        result.complete(last);
+    }
+
+    /**
+     * Stops the search as soon as it has a move. A search that hasn't started yet stops when it does.
+     */
+    synchronized void stop() {
+        stopRequested = true;
+        if (control != null) {
+            control.stop();
+        }
+    }
+
+    synchronized boolean isDone() {
+        return done;
+    }
+
+    synchronized long finishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Completes within {@code waitMillis} once there are more than {@code after} updates or the analysis is done,
+     * with its state and the updates after the first {@code after}. No thread waits meanwhile.
+     */
+    CompletableFuture<String> poll(int after, long waitMillis) {
+        return pollUntil(after, System.currentTimeMillis() + waitMillis);
+    }
+
+    private CompletableFuture<String> pollUntil(final int after, final long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            if (updates.size() > after || done || remaining <= 0) {
+                return CompletableFuture.completedFuture(json(after));
+            }
+            next = changed;
+        }
+        // an update may still leave too few, so look again after each one
+        return within(next, remaining).thenCompose(ignored -> pollUntil(after, deadline));
+    }
+
+    /**
+     * Completes within {@code waitMillis} once the analysis is done, with its full state.
+     */
+    CompletableFuture<String> whenDone(long waitMillis) {
+        return within(result, waitMillis).thenApply(ignored -> state(0));
+    }
+
+    /**
+     * Completes when the analysis is done with the best result it has, or null if it failed without one.
+     */
+    CompletableFuture<SearchResult> result() {
+        return result;
+    }
+
+    private synchronized String state(int after) {
+        return json(after);
+    }
+
+    /**
+     * Completes when {@code event} does, or after {@code waitMillis} if that is sooner.
+     */
+    private static CompletableFuture<Void> within(CompletableFuture<?> event, long waitMillis) {
+        final CompletableFuture<Void> signal = new CompletableFuture<>();
+        final ScheduledFuture<?> timer =
+                AsyncSearch.TIMER.schedule(() -> signal.complete(null), waitMillis, TimeUnit.MILLISECONDS);
+        event.whenComplete((done, failure) -> {
+            timer.cancel(false);
+            signal.complete(null);
+        });
+        return signal;
+    }
+
+    private String json(int after) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"id\":\"").append(id).append("\",\"done\":").append(done);
+        if (best != null) {
+            builder.append(",\"bestmove\":\"").append(Move.toUci(best.move)).append('"');
+        }
+        if (error != null) {
+            builder.append(",\"error\":\"").append(error).append('"');
+        }
+        builder.append(",\"next\":").append(updates.size()).append(",\"updates\":[");
+        int start = Math.max(0, after);
+        for (int i = start; i < updates.size(); i++) {
+            builder.append(i > start ? "," : "").append(updates.get(i));
+        }
+        return builder.append("]}").toString();
+    }
+}
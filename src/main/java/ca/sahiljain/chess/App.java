@@ -10,51 +10,580 @@ import com.spotify.apollo.route.AsyncHandler;
 import com.spotify.apollo.route.Middleware;
 import com.spotify.apollo.route.Route;
 import com.spotify.apollo.route.SyncHandler;
+import com.typesafe.config.Config;
+import okio.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public final class App {
 
+    private static final Logger LOG = LoggerFactory.getLogger(App.class);
+    private static final long POLL_WAIT_MS = 10_000;
+    private static final long MAX_POLL_WAIT_MS = 30_000;
+
     public static void main(String[] args) throws LoadingException {
         HttpService.boot(App::init, "chess-service", args);
     }
 
     static void init(Environment environment) {
-        SyncHandler<Response<String>> moveHandler = context -> playMove(context.request());
+        Config config = environment.config();
+        Metrics metrics = new Metrics();
+        TranspositionTable table = new TranspositionTable(config.getInt("chess.transposition-table.size-mb"));
+        SearchLimits defaults = new SearchLimits();
+        defaults.threads = config.getInt("chess.search.threads");
+        defaults.moveTime = config.getLong("chess.search.default-movetime-ms");
+        defaults.maxTime = config.getLong("chess.search.max-movetime-ms");
+        defaults.options.quiescence = config.getBoolean("chess.search.quiescence");
+        defaults.options.nullMove = config.getBoolean("chess.search.null-move");
+        defaults.options.lateMoveReductions = config.getBoolean("chess.search.late-move-reductions");
+        defaults.options.checkExtensions = config.getBoolean("chess.search.check-extensions");
+        String evaluation = config.getString("chess.evaluation.path");
+        defaults.options.evaluator =
+                evaluation.isEmpty() ? PieceSquareEvaluator.DEFAULT : PieceSquareEvaluator.load(evaluation);
+        int poolThreads = config.getInt("chess.scheduler.threads");
+        SearchScheduler scheduler = new SearchScheduler(
+                poolThreads > 0 ? poolThreads : Runtime.getRuntime().availableProcessors(),
+                config.getInt("chess.scheduler.queue-size"));
+        ResultCache cache = new ResultCache(config.getInt("chess.cache.size-mb"),
+                config.getLong("chess.cache.ttl-minutes"));
+        int cacheDepth = config.getInt("chess.cache.min-depth");
+        OpeningBook book = openingBook(config.getString("chess.book.path"));
+        Tablebase tablebase = tablebase(config.getString("chess.tablebase.path"));
+        AsyncHandler<Response<String>> moveHandler = context -> playMove(context.request(), table, tablebase,
+                defaults, scheduler, cache, cacheDepth, book, Metrics.current());
+        AsyncHandler<Response<String>> bestMoveHandler = context -> bestMove(context.request(), table, tablebase,
+                defaults, scheduler, cache, cacheDepth, book, Metrics.current());
+        BatchAnalyzer analyzer = new BatchAnalyzer(table, tablebase, scheduler, cache, cacheDepth);
+        int maxBatch = config.getInt("chess.batch.max-positions");
+        AsyncHandler<Response<String>> batchHandler =
+                context -> analyzeBatch(context.request(), defaults, analyzer, maxBatch, Metrics.current());
+        Analyses analyses = new Analyses(table, tablebase, scheduler, config.getInt("chess.analysis.max-running"),
+                TimeUnit.SECONDS.toMillis(config.getLong("chess.analysis.retention-seconds")));
+        SyncHandler<Response<String>> startAnalysisHandler =
+                context -> startAnalysis(context.request(), defaults, analyses, Metrics.current());
+        AsyncHandler<Response<String>> pollAnalysisHandler =
+                context -> pollAnalysis(context.request(), analyses.get(context.pathArgs().get("id")));
+        AsyncHandler<Response<String>> stopAnalysisHandler =
+                context -> stopAnalysis(analyses.get(context.pathArgs().get("id")));
+        GameSessions games = new GameSessions(tablebase, book, scheduler, config.getLong("chess.games.ponder-ms"),
+                config.getInt("chess.games.table-size-mb"), config.getInt("chess.games.max-size-mb"),
+                TimeUnit.MINUTES.toMillis(config.getLong("chess.games.idle-minutes")));
+        SyncHandler<Response<String>> startGameHandler = context -> startGame(context.request(), games);
+        SyncHandler<Response<String>> gameHandler = context -> gameState(games.get(context.pathArgs().get("id")));
+        AsyncHandler<Response<String>> gameMoveHandler = context -> playGameMove(context.request(), defaults,
+                scheduler, games.get(context.pathArgs().get("id")), Metrics.current());
+        SyncHandler<Response<String>> endGameHandler = context -> endGame(games, context.pathArgs().get("id"));
+        SyncHandler<Response<String>> statusHandler =
+                context -> status(scheduler, cache, book, tablebase, analyses, games);
+        SyncHandler<Response<String>> metricsHandler = context -> Response.forPayload(metrics.json())
+                .withHeader("Content-Type", "application/json");
 
         environment.routingEngine()
-                .registerAutoRoute(Route.with(exceptionHandler(), "GET", "/move", moveHandler));
+                .registerAutoRoute(asyncRoute(metrics, "GET", "/move", moveHandler))
+                .registerAutoRoute(asyncRoute(metrics, "GET", "/bestmove", bestMoveHandler))
+                .registerAutoRoute(asyncRoute(metrics, "POST", "/analyze/batch", batchHandler))
+                .registerAutoRoute(route(metrics, "POST", "/analysis", startAnalysisHandler))
+                .registerAutoRoute(asyncRoute(metrics, "GET", "/analysis/<id>", pollAnalysisHandler))
+                .registerAutoRoute(asyncRoute(metrics, "DELETE", "/analysis/<id>", stopAnalysisHandler))
+                .registerAutoRoute(route(metrics, "POST", "/games", startGameHandler))
+                .registerAutoRoute(route(metrics, "GET", "/games/<id>", gameHandler))
+                .registerAutoRoute(asyncRoute(metrics, "POST", "/games/<id>/move", gameMoveHandler))
+                .registerAutoRoute(route(metrics, "DELETE", "/games/<id>", endGameHandler))
+                .registerAutoRoute(route(metrics, "GET", "/status", statusHandler))
+                .registerAutoRoute(route(metrics, "GET", "/metrics", metricsHandler));
+    }
+
+    private static Route<AsyncHandler<Response<String>>> route(Metrics metrics, String method, String path,
+                                                                SyncHandler<Response<String>> handler) {
+        return Route.with(exceptionHandler(metrics, method + " " + path), method, path, handler);
+    }
+
+    private static Route<AsyncHandler<Response<String>>> asyncRoute(Metrics metrics, String method, String path,
+                                                                     AsyncHandler<Response<String>> handler) {
+        return Route.with(asyncExceptionHandler(metrics, method + " " + path), method, path, handler);
+    }
+
+    private static OpeningBook openingBook(String path) {
+        if (path.isEmpty()) {
+            return OpeningBook.empty();
+        }
+        try {
+            return OpeningBook.open(Paths.get(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Tablebase tablebase(String path) {
+        if (path.isEmpty()) {
+            return Tablebase.empty();
+        }
+        try {
+            return Tablebase.open(Paths.get(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Answers with the FEN after black's move in the {@code fen} of the query. The search runs on the scheduler
+     * and no request thread waits for it; cancelling the returned stage stops it.
+     */
+    static CompletionStage<Response<String>> playMove(Request request, TranspositionTable table,
+                                                      Tablebase tablebase, SearchLimits defaults,
+                                                      SearchScheduler scheduler, ResultCache cache, int cacheDepth,
+                                                      OpeningBook book, RequestMetrics metrics) {
+        Optional<String> fen = request.parameter("fen");
+        if (!fen.isPresent()) {
+            return CompletableFuture.completedFuture(Response.forStatus(Status.BAD_REQUEST));
+        }
+        SearchLimits limits;
+        Position root;
+        try {
+            limits = searchLimits(request, defaults);
+            root = Fen.parse(fen.get());
+            root.setSideToMove(Position.BLACK);
+            ChessStatic.rootPosition(root);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                    Response.forStatus(Status.BAD_REQUEST.withReasonPhrase(e.getMessage())));
+        } catch (IllegalStateException e) {
+            return CompletableFuture.completedFuture(
+                    Response.forStatus(Status.CONFLICT.withReasonPhrase(e.getMessage())));
+        }
+        CompletableFuture<SearchResult> move;
+        try {
+            move = chooseMove(root, table, tablebase, limits, scheduler, cache, cacheDepth, book, metrics);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(overloaded(scheduler, defaults));
+        }
+        return cancelling(move.thenApply(chosen -> {
+            root.makeMove(chosen.move);
+            return Response.forPayload(Fen.format(root)).withHeader("Access-Control-Allow-Origin", "*");
+        }), move);
+    }
+
+    /**
+     * Answers with the best move after the UCI {@code moves} of the query are played from its {@code fen}, or from
+     * the start position, in the {@code info} and {@code bestmove} lines of {@link Uci}. Moves repeating a position
+     * since the last capture or pawn move are scored as draws. Otherwise as {@link #playMove}.
+     */
+    static CompletionStage<Response<String>> bestMove(Request request, TranspositionTable table,
+                                                      Tablebase tablebase, SearchLimits defaults,
+                                                      SearchScheduler scheduler, ResultCache cache, int cacheDepth,
+                                                      OpeningBook book, RequestMetrics metrics) {
+        SearchLimits limits;
+        Position root;
+        try {
+            limits = searchLimits(request, defaults);
+            root = Uci.replay(Fen.parse(request.parameter("fen").orElse(Board.START_FEN)),
+                    request.parameter("moves").orElse(""));
+            ChessStatic.rootPosition(root);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                    Response.forStatus(Status.BAD_REQUEST.withReasonPhrase(e.getMessage())));
+        } catch (IllegalStateException e) {
+            return CompletableFuture.completedFuture(
+                    Response.forStatus(Status.CONFLICT.withReasonPhrase(e.getMessage())));
+        }
+        CompletableFuture<SearchResult> move;
+        try {
+            move = chooseMove(root, table, tablebase, limits, scheduler, cache, cacheDepth, book, metrics);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(overloaded(scheduler, defaults));
+        }
+        return cancelling(move.thenApply(chosen -> Response.forPayload(Uci.bestMove(chosen))
+                .withHeader("Content-Type", "text/plain")
+                .withHeader("Access-Control-Allow-Origin", "*")), move);
+    }
+
+    /**
+     * A book move if {@code book} has one. Otherwise the cached move when {@code cache} holds a result searched deep
+     * enough: as deep as the request's depth limit, or {@code cacheDepth} plies for a request without one.
+     * Otherwise searches, and caches the result. The cache is left alone for a position with a history, whose
+     * repetitions it doesn't know about. Cancelling the returned future stops the search.
+     *
+     * @throws RejectedExecutionException if the scheduler has no room for the search
+     */
+    private static CompletableFuture<SearchResult> chooseMove(Position root, TranspositionTable table,
+                                                              Tablebase tablebase, SearchLimits limits,
+                                                              SearchScheduler scheduler, ResultCache cache,
+                                                              int cacheDepth, OpeningBook book,
+                                                              RequestMetrics metrics) {
+        int move = book.probe(root);
+        if (move != Move.NONE) {
+            metrics.book();
+            return CompletableFuture.completedFuture(new SearchResult(move, 0, 0, new int[]{move}, new SearchStats()));
+        }
+        boolean cacheable = root.history.length == 0;
+        SearchResult cached = cacheable
+                ? cache.get(root, limits.depth < SearchLimits.MAX_DEPTH ? limits.depth : cacheDepth) : null;
+        if (cached != null) {
+            metrics.cached();
+            return CompletableFuture.completedFuture(cached);
+        }
+        final CompletableFuture<SearchResult> search =
+                ChessStatic.searchAsync(root, table, tablebase, limits, scheduler, SearchListener.NONE);
+        return cancelling(search.thenApply(result -> {
+            metrics.searched(result);
+            if (cacheable) {
+                cache.put(root, result);
+            }
+            return result;
+        }), search);
     }
 
-    static Response<String> playMove(Request request) {
+    /**
+     * {@code stage}, made to cancel {@code source} when it is cancelled, which the stages a
+     * {@link CompletableFuture} derives don't do by themselves.
+     */
+    private static <T> CompletableFuture<T> cancelling(final CompletableFuture<T> stage,
+                                                       final CompletableFuture<?> source) {
+        stage.whenComplete((done, failure) -> {
+            if (stage.isCancelled()) {
+                source.cancel(false);
+            }
+        });
+        return stage;
+    }
+
+    /**
+     * Analyses the FENs in the request body, one per line, each within the limits given in the query as for
+     * {@code /move}. The side to move is taken from each FEN. The response is NDJSON in the order the searches finish;
+     * no request thread waits for them.
+     */
+    static CompletionStage<Response<String>> analyzeBatch(Request request, SearchLimits defaults,
+                                                          BatchAnalyzer analyzer, int maxPositions,
+                                                          RequestMetrics metrics) {
+        List<String> fens = new ArrayList<>();
+        for (String line : request.payload().map(ByteString::utf8).orElse("").split("\n")) {
+            if (!line.trim().isEmpty()) {
+                fens.add(line.trim());
+            }
+        }
+        if (fens.isEmpty()) {
+            return CompletableFuture.completedFuture(Response.forStatus(Status.BAD_REQUEST));
+        }
+        if (fens.size() > maxPositions) {
+            return CompletableFuture.completedFuture(Response.forStatus(Status.REQUEST_ENTITY_TOO_LARGE));
+        }
+        SearchLimits limits;
+        try {
+            limits = searchLimits(request, defaults);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                    Response.forStatus(Status.BAD_REQUEST.withReasonPhrase(e.getMessage())));
+        }
+        CompletableFuture<String> results = analyzer.analyze(fens, limits, metrics);
+        return cancelling(results.thenApply(lines -> Response.forPayload(lines)
+                .withHeader("Content-Type", "application/x-ndjson")
+                .withHeader("Access-Control-Allow-Origin", "*")), results);
+    }
+
+    /**
+     * Starts analysing the {@code fen} in the query, with the side to move it gives, within the limits given as for
+     * {@code /move}. The analysis can then be followed at {@code /analysis/<id>}.
+     */
+    static Response<String> startAnalysis(Request request, SearchLimits defaults, Analyses analyses,
+                                          RequestMetrics metrics) {
         Optional<String> fen = request.parameter("fen");
-        if (fen.isPresent()) {
-            Board board = new Board(fen.get());
-            Board newBoard = ChessStatic.playComputerMove(Player.MINIMIZER, board);
-            String newFen = newBoard.toFen();
-            return Response.forPayload(newFen).withHeader("Access-Control-Allow-Origin", "*");
-        } else {
+        if (!fen.isPresent()) {
             return Response.forStatus(Status.BAD_REQUEST);
         }
+        SearchLimits limits;
+        Position root;
+        try {
+            limits = searchLimits(request, defaults);
+            root = ChessStatic.rootPosition(Fen.parse(fen.get()));
+        } catch (IllegalArgumentException e) {
+            return Response.forStatus(Status.BAD_REQUEST.withReasonPhrase(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return Response.forStatus(Status.CONFLICT.withReasonPhrase(e.getMessage()));
+        }
+        Analysis analysis;
+        try {
+            analysis = analyses.start(root, limits, metrics);
+        } catch (RejectedExecutionException e) {
+            return Response.<String>forStatus(Status.SERVICE_UNAVAILABLE)
+                    .withHeader("Access-Control-Allow-Origin", "*");
+        }
+        return Response.<String>forStatus(Status.CREATED)
+                .withPayload(String.format("{\"id\":\"%s\"}", analysis.id))
+                .withHeader("Location", "/analysis/" + analysis.id)
+                .withHeader("Content-Type", "application/json")
+                .withHeader("Access-Control-Allow-Origin", "*");
+    }
+
+    /**
+     * Long-polls an analysis: waits up to {@code wait} milliseconds until it has more than {@code after} updates or
+     * is done, then returns the updates after the first {@code after} and the best move so far. The {@code next}
+     * field of the response is the {@code after} to send next. No request thread waits meanwhile.
+     */
+    static CompletionStage<Response<String>> pollAnalysis(Request request, Analysis analysis) {
+        if (analysis == null) {
+            return CompletableFuture.completedFuture(Response.forStatus(Status.NOT_FOUND));
+        }
+        int after;
+        long wait;
+        try {
+            after = longParameter(request, "after", 0, Integer.MAX_VALUE).orElse(0L).intValue();
+            wait = Math.min(longParameter(request, "wait", 0, Long.MAX_VALUE).orElse(POLL_WAIT_MS), MAX_POLL_WAIT_MS);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                    Response.forStatus(Status.BAD_REQUEST.withReasonPhrase(e.getMessage())));
+        }
+        return analysis.poll(after, wait).thenApply(App::analysisState);
     }
 
     /**
-     * A generic middleware that maps uncaught exceptions to error code 418
+     * Stops an analysis as soon as it has a move and returns its final state, with every update.
      */
-    static <T> Middleware<SyncHandler<Response<T>>, SyncHandler<Response<T>>> exceptionMiddleware() {
+    static CompletionStage<Response<String>> stopAnalysis(Analysis analysis) {
+        if (analysis == null) {
+            return CompletableFuture.completedFuture(Response.forStatus(Status.NOT_FOUND));
+        }
+        analysis.stop();
+        return analysis.whenDone(MAX_POLL_WAIT_MS).thenApply(App::analysisState);
+    }
+
+    private static Response<String> analysisState(String state) {
+        return Response.forPayload(state)
+                .withHeader("Content-Type", "application/json")
+                .withHeader("Access-Control-Allow-Origin", "*");
+    }
+
+    /**
+     * Starts a game from the {@code fen} in the query, or from the start position, with the side to move it gives.
+     * The game is then played at {@code /games/<id>}.
+     */
+    static Response<String> startGame(Request request, GameSessions games) {
+        Position start;
+        try {
+            start = ChessStatic.rootPosition(Fen.parse(request.parameter("fen").orElse(Board.START_FEN)));
+        } catch (IllegalArgumentException e) {
+            return Response.forStatus(Status.BAD_REQUEST.withReasonPhrase(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return Response.forStatus(Status.CONFLICT.withReasonPhrase(e.getMessage()));
+        }
+        GameSession game;
+        try {
+            game = games.start(start);
+        } catch (RejectedExecutionException e) {
+            return Response.<String>forStatus(Status.SERVICE_UNAVAILABLE)
+                    .withHeader("Access-Control-Allow-Origin", "*");
+        }
+        return Response.<String>forStatus(Status.CREATED)
+                .withPayload(game.state())
+                .withHeader("Location", "/games/" + game.id)
+                .withHeader("Content-Type", "application/json")
+                .withHeader("Access-Control-Allow-Origin", "*");
+    }
+
+    static Response<String> gameState(GameSession game) {
+        if (game == null) {
+            return Response.forStatus(Status.NOT_FOUND);
+        }
+        return Response.forPayload(game.state())
+                .withHeader("Content-Type", "application/json")
+                .withHeader("Access-Control-Allow-Origin", "*");
+    }
+
+    /**
+     * Plays the UCI {@code move} in the query, if any, and the engine's reply within the limits given as for
+     * {@code /move}. Without a move the engine moves for the side to move.
+     */
+    static CompletionStage<Response<String>> playGameMove(Request request, final SearchLimits defaults,
+                                                          final SearchScheduler scheduler, GameSession game,
+                                                          RequestMetrics metrics) {
+        if (game == null) {
+            return CompletableFuture.completedFuture(Response.forStatus(Status.NOT_FOUND));
+        }
+        CompletableFuture<String> state;
+        try {
+            state = game.play(request.parameter("move").orElse(null), searchLimits(request, defaults), metrics);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                    Response.forStatus(Status.BAD_REQUEST.withReasonPhrase(e.getMessage())));
+        } catch (IllegalStateException e) {
+            return CompletableFuture.completedFuture(
+                    Response.forStatus(Status.CONFLICT.withReasonPhrase(e.getMessage())));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(overloaded(scheduler, defaults));
+        }
+        return cancelling(state.handle((done, failure) -> {
+            if (done != null) {
+                return Response.forPayload(done)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Access-Control-Allow-Origin", "*");
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            if (cause instanceof RejectedExecutionException) {
+                return overloaded(scheduler, defaults);
+            }
+            if (cause instanceof IllegalStateException && !(cause instanceof CancellationException)) {
+                return Response.<String>forStatus(Status.CONFLICT.withReasonPhrase(cause.getMessage()));
+            }
+            throw failure instanceof CompletionException ? (CompletionException) failure
+                    : new CompletionException(failure);
+        }), state);
+    }
+
+    private static Response<String> overloaded(SearchScheduler scheduler, SearchLimits defaults) {
+        return Response.<String>forStatus(Status.SERVICE_UNAVAILABLE)
+                .withHeader("Retry-After", Long.toString(scheduler.retryAfterSeconds(defaults.moveTime)))
+                .withHeader("Access-Control-Allow-Origin", "*");
+    }
+
+    static Response<String> endGame(GameSessions games, String id) {
+        return Response.forStatus(games.end(id) ? Status.NO_CONTENT : Status.NOT_FOUND);
+    }
+
+    /**
+     * Reads UCI {@code go} style limits from the query: movetime, depth, nodes, wtime, btime, winc, binc,
+     * movestogo, plus threads. A request that gives a clock, depth or node count without a movetime is not held
+     * to the default move time, only to the service maximum. More threads than there are processors are cut down
+     * to one per processor.
+     *
+     * @throws IllegalArgumentException if a limit isn't an integer or is out of range
+     */
+    static SearchLimits searchLimits(Request request, SearchLimits defaults) {
+        SearchLimits limits = defaults.copy();
+        Optional<Long> moveTime = longParameter(request, "movetime", 1, Long.MAX_VALUE);
+        Optional<Long> depth = longParameter(request, "depth", 1, SearchLimits.MAX_DEPTH);
+        Optional<Long> nodes = longParameter(request, "nodes", 1, Long.MAX_VALUE);
+        limits.whiteTime = longParameter(request, "wtime", 0, Long.MAX_VALUE).orElse(0L);
+        limits.blackTime = longParameter(request, "btime", 0, Long.MAX_VALUE).orElse(0L);
+        limits.whiteIncrement = longParameter(request, "winc", 0, Long.MAX_VALUE).orElse(0L);
+        limits.blackIncrement = longParameter(request, "binc", 0, Long.MAX_VALUE).orElse(0L);
+        limits.movesToGo = longParameter(request, "movestogo", 0, Integer.MAX_VALUE).orElse(0L).intValue();
+        if (moveTime.isPresent()) {
+            limits.moveTime = moveTime.get();
+        } else if (depth.isPresent() || nodes.isPresent() || limits.whiteTime > 0 || limits.blackTime > 0) {
+            limits.moveTime = 0;
+        }
+        limits.depth = depth.orElse((long) SearchLimits.MAX_DEPTH).intValue();
+        limits.nodes = nodes.orElse(Long.MAX_VALUE);
+        long threads = longParameter(request, "threads", 1, Long.MAX_VALUE).orElse((long) defaults.threads);
+        limits.threads = (int) Math.min(threads, Runtime.getRuntime().availableProcessors());
+        return limits;
+    }
+
+    /**
+     * The integer query parameter {@code name}, if there is one.
+     *
+     * @throws IllegalArgumentException if it isn't an integer from {@code min} to {@code max}
+     */
+    private static Optional<Long> longParameter(Request request, String name, long min, long max) {
+        Optional<String> text = request.parameter(name);
+        if (!text.isPresent()) {
+            return Optional.empty();
+        }
+        long value;
+        try {
+            value = Long.parseLong(text.get());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+        if (value < min) {
+            throw new IllegalArgumentException(name + " must be at least " + min);
+        }
+        if (value > max) {
+            throw new IllegalArgumentException(name + " must be at most " + max);
+        }
+        return Optional.of(value);
+    }
+
+    static Response<String> status(SearchScheduler scheduler, ResultCache cache, OpeningBook book,
+                                   Tablebase tablebase, Analyses analyses, GameSessions games) {
+        String payload = String.format(Locale.ROOT,
+                "{\"threads\":%d,\"active\":%d,\"queued\":%d,\"submitted\":%d,\"rejected\":%d,\"averageWaitMs\":%d,"
+                        + "\"cache\":{\"entries\":%d,\"bytes\":%d,\"hits\":%d,\"misses\":%d,\"hitRatio\":%.4f,"
+                        + "\"evictions\":%d},\"book\":{\"entries\":%d,\"hits\":%d,\"misses\":%d},"
+                        + "\"tablebase\":{\"tables\":%d,\"pieces\":%d,\"hits\":%d},\"analyses\":%d,"
+                        + "\"games\":%d}",
+                scheduler.threads(), scheduler.active(), scheduler.queued(), scheduler.submitted(),
+                scheduler.rejected(), scheduler.averageWaitMillis(), cache.entries(), cache.bytes(), cache.hits(),
+                cache.misses(), cache.hitRatio(), cache.evictions(), book.entries(), book.hits(), book.misses(),
+                tablebase.tables(), tablebase.maxPieces(), tablebase.hits(), analyses.running(),
+                games.size());
+        return Response.forPayload(payload).withHeader("Content-Type", "application/json");
+    }
+
+    /**
+     * A generic middleware that logs uncaught exceptions, thrown or completing the handler's stage, and maps them
+     * to error code 418
+     */
+    static <T> Middleware<AsyncHandler<Response<T>>, AsyncHandler<Response<T>>> exceptionMiddleware() {
         return handler -> requestContext -> {
+            CompletionStage<Response<T>> response;
             try {
-                return handler.invoke(requestContext);
+                response = handler.invoke(requestContext);
             } catch (RuntimeException e) {
+                CompletableFuture<Response<T>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                response = failed;
+            }
+            return response.exceptionally(e -> {
+                LOG.warn("{} {} failed", requestContext.request().method(), requestContext.request().uri(),
+                        e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
                 return Response.forStatus(Status.IM_A_TEAPOT);
+            });
+        };
+    }
+
+    /**
+     * A middleware that times each request to {@code route}, until its response is ready, and records its status
+     * in {@code metrics}. While the handler is invoked, {@link Metrics#current()} gives it the request's own
+     * metrics.
+     */
+    static <T> Middleware<AsyncHandler<Response<T>>, AsyncHandler<Response<T>>> metricsMiddleware(Metrics metrics,
+                                                                                                 String route) {
+        return handler -> requestContext -> {
+            RequestMetrics request = metrics.begin(route);
+            CompletionStage<Response<T>> response;
+            try {
+                response = handler.invoke(requestContext);
+            } catch (RuntimeException e) {
+                metrics.end(request, Status.INTERNAL_SERVER_ERROR.code());
+                throw e;
+            } finally {
+                Metrics.detach();
             }
+            return response.whenComplete((done, failure) -> metrics.end(request,
+                    done != null ? done.status().code() : Status.INTERNAL_SERVER_ERROR.code()));
         };
     }
 
     /**
-     * Async version of {@link #exceptionMiddleware()}
+     * {@link #exceptionMiddleware()} measured by {@link #metricsMiddleware}, for handlers that answer
+     * asynchronously
+     */
+    static <T> Middleware<AsyncHandler<Response<T>>, AsyncHandler<Response<T>>> asyncExceptionHandler(
+            Metrics metrics, String route) {
+        return App.<T>exceptionMiddleware().and(App.<T>metricsMiddleware(metrics, route));
+    }
+
+    /**
+     * Async version of {@link #asyncExceptionHandler} for handlers that answer synchronously
      */
-    static <T> Middleware<SyncHandler<Response<T>>, AsyncHandler<Response<T>>> exceptionHandler() {
-        return App.<T>exceptionMiddleware().and(Middleware::syncToAsync);
+    static <T> Middleware<SyncHandler<Response<T>>, AsyncHandler<Response<T>>> exceptionHandler(Metrics metrics,
+                                                                                               String route) {
+        Middleware<SyncHandler<Response<T>>, AsyncHandler<Response<T>>> async = Middleware::syncToAsync;
+        return async.and(App.<T>asyncExceptionHandler(metrics, route));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,237 @@
+package ca.sahiljain.chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Iterative deepening with no thread waiting on it. Each iteration of the main search is its own task on the
+ * {@link SearchScheduler}; when it finishes it submits the next one, or completes the {@link #result} if the limits
+ * or the {@link TimeManager} say to stop. Each iteration submitted also submits one depth of the helpers that have
+ * finished their last, but only onto threads no task is running on or waiting for. So helpers hold a scheduler thread
+ * for no longer than an iteration, and never keep other searches waiting for one.
+ *
+ * A search stops early when its result is completed or cancelled by anyone else, and a timer gives up on an
+ * iteration still queued when the time runs out, answering with the last completed one.
+ */
+final class AsyncSearch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSearch.class);
+    // how long past the deadline to wait for a queued iteration before answering without it
+    static final long STOP_GRACE_MS = 20;
+
+    // also times out waits on searches elsewhere; its tasks must be quick
+    static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Position root;
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+    private final SearchLimits limits;
+    private final SearchScheduler scheduler;
+    private final SearchListener listener;
+    private final CompletableFuture<SearchResult> result = new CompletableFuture<>();
+    // filled before the first iteration is submitted, and not changed after
+    private final List<Helper> helpers = new ArrayList<>();
+    private final long startTime = System.currentTimeMillis();
+    private final TimeManager time;
+    private final SearchControl control;
+    private final Search search;
+    // the rest is only touched by the iteration running, each submitted by the one before
+    private int depth;
+    private long lastIteration;
+    private long previousIteration;
+    private volatile SearchResult best;
+    private ScheduledFuture<?> timeout;
+
+    AsyncSearch(Position root, TranspositionTable table, Tablebase tablebase, SearchLimits limits,
+                SearchScheduler scheduler, SearchListener listener) {
+        this.root = root;
+        this.table = table;
+        this.tablebase = tablebase;
+        this.limits = limits;
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.time = new TimeManager(limits, root.sideToMove, startTime);
+        this.control = new SearchControl(time.remaining());
+        // the first iteration always runs to completion, so there is a move to play however busy we are
+        this.search = new Search(root.copy(), table, tablebase, limits.options, SearchControl.unlimited());
+    }
+
+    /**
+     * Starts searching. The result completes with the move to play, or exceptionally if there is none.
+     *
+     * @throws RejectedExecutionException if the scheduler has no room for the first iteration
+     */
+    CompletableFuture<SearchResult> start() {
+        SearchResult known = tablebase.bestMove(root.copy());
+        if (known != null) {
+            listener.iteration(known, System.currentTimeMillis() - startTime);
+            result.complete(known);
+            return result;
+        }
+        listener.started(control);
+        table.newSearch();
+        for (int i = 1; i < limits.threads; i++) {
+            helpers.add(new Helper(new Search(root.copy(), table, tablebase, limits.options, control), i & 1));
+        }
+        int free = idleThreads() - 1;
+        scheduler.submit(this::iterate);
+        result.whenComplete((done, failure) -> control.stop());
+        submitHelpers(1, free);
+        return result;
+    }
+
+    /**
+     * Submits {@code depth} to as many as {@code threads} of the helpers that are free, each as deep again as its
+     * offset. The rest sit this depth out.
+     */
+    private void submitHelpers(int depth, int threads) {
+        for (Helper helper : helpers) {
+            if (threads <= 0) {
+                return;
+            }
+            if (helper.submit(Math.min(depth + helper.offset, limits.depth))) {
+                threads--;
+            }
+        }
+    }
+
+    /**
+     * Scheduler threads that no task is running on or waiting for.
+     */
+    private int idleThreads() {
+        return scheduler.threads() - scheduler.active() - scheduler.queued();
+    }
+
+    /**
+     * A Lazy SMP helper: a search of its own copy of the root, run one depth at a time.
+     */
+    private final class Helper {
+
+        final Search search;
+        final int offset;
+        // held while a depth is queued or running, and for good once the search is finished
+        final AtomicBoolean busy = new AtomicBoolean();
+
+        Helper(Search search, int offset) {
+            this.search = search;
+            this.offset = offset;
+        }
+
+        /**
+         * Submits {@code depth} unless the helper is busy or the scheduler has no room, returning whether it did.
+         */
+        boolean submit(final int depth) {
+            if (!busy.compareAndSet(false, true)) {
+                return false;
+            }
+            try {
+                scheduler.submit(() -> {
+                    try {
+                        if (!result.isDone()) {
+                            search.searchRoot(depth);
+                        }
+                    } catch (SearchStoppedException e) {
+                        // the main search has its move
+                    } finally {
+                        busy.set(false);
+                    }
+                    return null;
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                busy.set(false);
+                return false;
+            }
+        }
+    }
+
+    private Void iterate() {
+        if (result.isDone()) {
+            return null;
+        }
+        long iterationStart = System.nanoTime();
+        int move;
+        try {
+            move = search.searchRoot(depth + 1);
+        } catch (SearchStoppedException e) {
+            finish(search.stats());
+            return null;
+        } catch (RuntimeException e) {
+            if (best == null) {
+                result.completeExceptionally(new IllegalStateException(e));
+            } else {
+                finish(search.stats());
+            }
+            return null;
+        }
+        boolean unstable = best != null && move != best.move;
+        depth++;
+        best = new SearchResult(move, search.score(), depth, Arrays.copyOf(search.pv(), search.pvLength()),
+                search.stats().copy());
+        listener.iteration(best, System.currentTimeMillis() - startTime);
+        previousIteration = lastIteration;
+        lastIteration = System.nanoTime() - iterationStart;
+        if (depth == 1) {
+            search.setControl(control);
+            search.setNodeLimit(limits.nodes);
+        }
+        if (depth >= limits.depth || control.isStopped()
+                || !time.canStartIteration(lastIteration, previousIteration, unstable)) {
+            finish(search.stats());
+            return null;
+        }
+        if (timeout == null) {
+            // the search stops itself at the deadline; this only gives up on an iteration still queued
+            final ScheduledFuture<?> timer = TIMER.schedule(() -> {
+                if (!result.isDone()) {
+                    LOG.debug("gave up on an iteration still queued at the deadline");
+                    finish(best.stats);
+                }
+            }, Math.max(0, time.remaining()) + STOP_GRACE_MS, TimeUnit.MILLISECONDS);
+            timeout = timer;
+            result.whenComplete((done, failure) -> timer.cancel(false));
+        }
+        // this iteration's thread is about to be free for the next one
+        int free = idleThreads();
+        try {
+            scheduler.submit(this::iterate);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("the scheduler had no room for the next iteration");
+            finish(search.stats());
+            return null;
+        }
+        submitHelpers(depth + 1, free);
+        return null;
+    }
+
+    private void finish(SearchStats mainStats) {
+        SearchResult last = best;
+        if (last == null || last.move == Move.NONE) {
+            result.completeExceptionally(new IllegalStateException("no move to play"));
+            return;
+        }
+        SearchStats stats = mainStats.copy();
+        // helpers still searching when the move is chosen are left out
+        for (Helper helper : helpers) {
+            if (helper.busy.compareAndSet(false, true)) {
+                stats.add(helper.search.stats());
+            }
+        }
+        result.complete(new SearchResult(last.move, last.score, last.depth, last.pv, stats));
+    }
+}
@@ -0,0 +1,151 @@
+package ca.sahiljain.chess;
+
+/**
+ * Precomputed attack sets. Squares are numbered a1 = 0 .. h8 = 63.
+ * Sliding pieces use magic bitboards; the magics are searched once at class load from a fixed seed.
+ */
+final class Attacks {
+
+    static final long[] KNIGHT = new long[64];
+    static final long[] KING = new long[64];
+    static final long[][] PAWN = new long[2][64];
+
+    private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] ROOK_MAGICS = new long[64];
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final long[][] ROOK_TABLE = new long[64][];
+
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final long[] BISHOP_MAGICS = new long[64];
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final long[][] BISHOP_TABLE = new long[64][];
+
+    private static long seed = 0x2545F4914F6CDD1DL;
+
+    static {
+        int[][] knightSteps = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+        int[][] kingSteps = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
+        for (int sq = 0; sq < 64; sq++) {
+            KNIGHT[sq] = steps(sq, knightSteps);
+            KING[sq] = steps(sq, kingSteps);
+            PAWN[Position.WHITE][sq] = steps(sq, new int[][]{{-1, 1}, {1, 1}});
+            PAWN[Position.BLACK][sq] = steps(sq, new int[][]{{-1, -1}, {1, -1}});
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            initMagic(sq, ROOK_DIRECTIONS, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS, ROOK_TABLE);
+            initMagic(sq, BISHOP_DIRECTIONS, BISHOP_MASKS, BISHOP_MAGICS, BISHOP_SHIFTS, BISHOP_TABLE);
+        }
+    }
+
+    private Attacks() {
+    }
+
+    static long rook(int sq, long occupied) {
+        return ROOK_TABLE[sq][(int) (((occupied & ROOK_MASKS[sq]) * ROOK_MAGICS[sq]) >>> ROOK_SHIFTS[sq])];
+    }
+
+    static long bishop(int sq, long occupied) {
+        return BISHOP_TABLE[sq][(int) (((occupied & BISHOP_MASKS[sq]) * BISHOP_MAGICS[sq]) >>> BISHOP_SHIFTS[sq])];
+    }
+
+    static long queen(int sq, long occupied) {
+        return rook(sq, occupied) | bishop(sq, occupied);
+    }
+
+    private static long steps(int sq, int[][] steps) {
+        long result = 0;
+        int file = sq & 7;
+        int rank = sq >>> 3;
+        for (int[] step : steps) {
+            int f = file + step[0];
+            int r = rank + step[1];
+            if (f >= 0 && f < 8 && r >= 0 && r < 8) {
+                result |= 1L << (r * 8 + f);
+            }
+        }
+        return result;
+    }
+
+    private static long slidingAttacks(int sq, long occupied, int[][] directions) {
+        long result = 0;
+        for (int[] direction : directions) {
+            int f = (sq & 7) + direction[0];
+            int r = (sq >>> 3) + direction[1];
+            while (f >= 0 && f < 8 && r >= 0 && r < 8) {
+                long bit = 1L << (r * 8 + f);
+                result |= bit;
+                if ((occupied & bit) != 0) {
+                    break;
+                }
+                f += direction[0];
+                r += direction[1];
+            }
+        }
+        return result;
+    }
+
+    private static long relevantMask(int sq, int[][] directions) {
+        long result = 0;
+        for (int[] direction : directions) {
+            int f = (sq & 7) + direction[0];
+            int r = (sq >>> 3) + direction[1];
+            // the last square of each ray never blocks anything, so it is left out of the mask
+            while (f + direction[0] >= 0 && f + direction[0] < 8 && r + direction[1] >= 0 && r + direction[1] < 8) {
+                result |= 1L << (r * 8 + f);
+                f += direction[0];
+                r += direction[1];
+            }
+        }
+        return result;
+    }
+
+    private static void initMagic(int sq, int[][] directions, long[] masks, long[] magics, int[] shifts, long[][] table) {
+        long mask = relevantMask(sq, directions);
+        int bits = Long.bitCount(mask);
+        int size = 1 << bits;
+        long[] occupancies = new long[size];
+        long[] attacks = new long[size];
+        long subset = 0;
+        for (int i = 0; i < size; i++) {
+            occupancies[i] = subset;
+            attacks[i] = slidingAttacks(sq, subset, directions);
+            subset = (subset - mask) & mask;
+        }
+
+        long[] entries = new long[size];
+        int[] epochs = new int[size];
+        for (int epoch = 1; ; epoch++) {
+            long magic = nextRandom() & nextRandom() & nextRandom();
+            if (Long.bitCount((mask * magic) & 0xFF00000000000000L) < 6) {
+                continue;
+            }
+            boolean collision = false;
+            for (int i = 0; i < size && !collision; i++) {
+                int index = (int) ((occupancies[i] * magic) >>> (64 - bits));
+                if (epochs[index] < epoch) {
+                    epochs[index] = epoch;
+                    entries[index] = attacks[i];
+                } else if (entries[index] != attacks[i]) {
+                    collision = true;
+                }
+            }
+            if (!collision) {
+                masks[sq] = mask;
+                magics[sq] = magic;
+                shifts[sq] = 64 - bits;
+                table[sq] = entries;
+                return;
+            }
+        }
+    }
+
+    private static long nextRandom() {
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        return seed * 0x2545F4914F6CDD1DL;
+    }
+}
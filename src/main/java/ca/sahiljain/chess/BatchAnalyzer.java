@@ -0,0 +1,161 @@
+package ca.sahiljain.chess;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Analyses many positions for one request. Each position is driven by one of a fixed set of driver threads shared
+ * by all batches, which submits its iterations to the {@link SearchScheduler} like any other search. A batch has at
+ * most {@link #inFlight} positions queued or running on the drivers at once and starts the next as each finishes,
+ * so concurrent batches take turns on the drivers instead of waiting behind the largest. When the scheduler's queue
+ * is full, a driver waits and submits again rather than failing the position. Results come out in the order the
+ * searches finish, one JSON object per line, and no request thread waits for them.
+ */
+final class BatchAnalyzer {
+
+    // how long a driver waits before submitting again to a full scheduler
+    private static final long RETRY_MS = 10;
+
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+    private final SearchScheduler scheduler;
+    private final ResultCache cache;
+    private final int cacheDepth;
+    private final ExecutorService drivers;
+    // positions of one batch on the drivers at once
+    private final int inFlight;
+
+    BatchAnalyzer(TranspositionTable table, Tablebase tablebase, SearchScheduler scheduler, ResultCache cache,
+                  int cacheDepth) {
+        this.table = table;
+        this.tablebase = tablebase;
+        this.scheduler = scheduler;
+        this.cache = cache;
+        this.cacheDepth = cacheDepth;
+        this.drivers = Executors.newFixedThreadPool(scheduler.threads(), runnable -> {
+            Thread thread = new Thread(runnable, "batch-driver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.inFlight = Math.max(1, scheduler.threads() / 2);
+    }
+
+    /**
+     * Analyses every FEN in {@code fens} within {@code limits}. The result completes, from the driver that finishes
+     * last, with one line per position in the order they finished. Each line carries the position's index in
+     * {@code fens}, so callers can put them back in order. Cancelling the result drops the positions not yet
+     * started. Searches and cache hits are recorded in {@code metrics} from the driver threads.
+     */
+    CompletableFuture<String> analyze(List<String> fens, SearchLimits limits, RequestMetrics metrics) {
+        Batch batch = new Batch(fens, limits, metrics);
+        for (int i = 0; i < inFlight; i++) {
+            batch.startNext();
+        }
+        return batch.result;
+    }
+
+    private final class Batch {
+
+        final List<String> fens;
+        final SearchLimits limits;
+        final RequestMetrics metrics;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        final StringBuilder builder = new StringBuilder();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining;
+
+        Batch(List<String> fens, SearchLimits limits, RequestMetrics metrics) {
+            this.fens = fens;
+            this.limits = limits;
+            this.metrics = metrics;
+            this.remaining = new AtomicInteger(fens.size());
+        }
+
+        void startNext() {
+            final int index = next.getAndIncrement();
+            if (index < fens.size() && !result.isDone()) {
+                drivers.execute(() -> run(index));
+            }
+        }
+
+        private void run(int index) {
+            if (result.isDone()) {
+                return;
+            }
+            String line;
+            try {
+                line = analyze(index, fens.get(index), limits, metrics, result);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            synchronized (builder) {
+                builder.append(line).append('\n');
+                if (remaining.decrementAndGet() == 0) {
+                    result.complete(builder.toString());
+                }
+            }
+            startNext();
+        }
+    }
+
+    private String analyze(int index, String fen, SearchLimits limits, RequestMetrics metrics,
+                           CompletableFuture<String> batch) {
+        Position root;
+        try {
+            root = ChessStatic.rootPosition(Fen.parse(fen));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return error(index, fen, e.getMessage());
+        }
+        SearchResult result = cache.get(root, limits.depth < SearchLimits.MAX_DEPTH ? limits.depth : cacheDepth);
+        if (result == null) {
+            try {
+                result = search(root, limits, batch);
+            } catch (IllegalStateException e) {
+                return error(index, fen, "no move found");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return error(index, fen, "interrupted");
+            }
+            metrics.searched(result);
+            cache.put(root, result);
+        } else {
+            metrics.cached();
+        }
+        return String.format(Locale.ROOT,
+                "{\"index\":%d,\"fen\":\"%s\",\"move\":\"%s\",\"score\":%d,\"depth\":%d,\"nodes\":%d,\"pv\":%s}",
+                index, quote(fen), Move.toUci(result.move), result.score, result.depth, result.nodes, result.pvJson());
+    }
+
+    /**
+     * Searches {@code root}, submitting again while the scheduler is full until it takes the search or
+     * {@code batch} is done.
+     */
+    private SearchResult search(Position root, SearchLimits limits, CompletableFuture<String> batch)
+            throws InterruptedException {
+        while (true) {
+            try {
+                return ChessStatic.search(root, table, tablebase, limits, scheduler);
+            } catch (RejectedExecutionException e) {
+                if (batch.isDone()) {
+                    throw new IllegalStateException("batch is done", e);
+                }
+                Thread.sleep(RETRY_MS);
+            }
+        }
+    }
+
+    private static String error(int index, String fen, String message) {
+        return String.format(Locale.ROOT, "{\"index\":%d,\"fen\":\"%s\",\"error\":\"%s\"}", index, quote(fen),
+                quote(message));
+    }
+
+    private static String quote(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,73 @@
+package ca.sahiljain.chess;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link OpeningBook} from a text file of opening lines. Each line is a sequence of UCI moves from the
+ * start position, and {@code #} starts a comment. Every position along a line gets the move played from it,
+ * weighted by the number of lines that play it. A line ends early at the first move the engine can't play.
+ *
+ * Usage: {@code BookBuilder <lines.txt> <book.bin>}
+ */
+public final class BookBuilder {
+
+    private BookBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: BookBuilder <lines.txt> <book.bin>");
+            System.exit(2);
+        }
+        Map<Long, Map<Integer, Integer>> weights = new HashMap<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            String text = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (text.isEmpty()) {
+                continue;
+            }
+            Position position = Fen.parse(Board.START_FEN);
+            for (String uci : text.split("\\s+")) {
+                int move = Move.fromUci(position, uci);
+                if (move == Move.NONE) {
+                    System.err.println("line " + lineNumber + ": stopping at " + uci);
+                    break;
+                }
+                weights.computeIfAbsent(position.key, key -> new HashMap<>()).merge(move, 1, Integer::sum);
+                position.makeMove(move);
+            }
+        }
+
+        List<long[]> entries = new ArrayList<>();
+        for (Map.Entry<Long, Map<Integer, Integer>> position : weights.entrySet()) {
+            for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                entries.add(new long[]{position.getKey(), move.getKey(), Math.min(move.getValue(), 0xFFFF)});
+            }
+        }
+        // sorted the way OpeningBook searches, by signed key
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[2], a[2]));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(Paths.get(args[1]))))) {
+            out.writeLong(OpeningBook.MAGIC);
+            out.writeLong(OpeningBook.startKey());
+            for (long[] entry : entries) {
+                out.writeLong(entry[0]);
+                out.writeShort((int) entry[1]);
+                out.writeShort((int) entry[2]);
+            }
+        }
+        System.out.println(weights.size() + " positions, " + entries.size() + " entries");
+    }
+}
@@ -0,0 +1,348 @@
+package ca.sahiljain.chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fits the weights of {@link PieceSquareEvaluator} to positions labelled with the results of their games, by Texel's
+ * method: the evaluation, put through a logistic curve, should predict the result. Positions are evaluated as they
+ * stand, so they should be quiet ones. Each line of the input is a FEN, or the four fields of an EPD, followed by the
+ * result for white: {@code 1-0}, {@code 0-1} or {@code 1/2-1/2}, or {@code 1}, {@code 0} or {@code 0.5}, optionally
+ * quoted or bracketed, and after a {@code c9} opcode or a semicolon.
+ *
+ * The evaluation is linear in its weights, so each position is reduced once to how many times every weight counts
+ * in it. The scale of the curve is fitted first, then the mean squared error over the whole set is minimized by
+ * Adam, with the gradient of each iteration summed over chunks of the set as fork-join tasks.
+ *
+ * Usage: {@code EvaluationTuner [-iterations n] [-rate r] [-start evaluation.conf] <positions.txt> <evaluation.conf>}
+ * starts from the weights of {@code -start}, or the bundled ones, and writes the fitted weights.
+ */
+public final class EvaluationTuner {
+
+    // the value of a piece type, then its 64 squares
+    private static final int PER_TYPE = 65;
+    private static final int MOBILITY = 6 * PER_TYPE;
+    private static final int WEIGHTS = MOBILITY + 1;
+    private static final int CHUNK = 1 << 14;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final String HEADER = "Weights of PieceSquareEvaluator in centipawns, as EvaluationTuner writes "
+            + "them. Each piece has a value and a table\nof what it adds on each square, for the midgame and for the "
+            + "endgame; evaluations blend the two by the material left.\nTables are from white's side and read as "
+            + "the board is drawn, a8 first; black's are mirrored. Mobility is per move.\n";
+
+    private int count;
+    // the weights counted in position i are features[offsets[i]] until offsets[i + 1], each coefficients times
+    private int[] offsets = new int[1 << 16];
+    private short[] features = new short[1 << 20];
+    private short[] coefficients = new short[1 << 20];
+    private byte[] phases = new byte[1 << 16];
+    private float[] results = new float[1 << 16];
+
+    private EvaluationTuner() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int iterations = 2000;
+        double rate = 1.0;
+        String start = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-rate":
+                    rate = Double.parseDouble(args[++i]);
+                    break;
+                case "-start":
+                    start = args[++i];
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        if (files.size() != 2) {
+            System.err.println("usage: EvaluationTuner [-iterations n] [-rate r] [-start evaluation.conf] "
+                    + "<positions.txt> <evaluation.conf>");
+            System.exit(2);
+        }
+        PieceSquareEvaluator.Weights initial =
+                (start == null ? PieceSquareEvaluator.DEFAULT : PieceSquareEvaluator.load(start)).weights;
+
+        EvaluationTuner tuner = new EvaluationTuner();
+        tuner.read(files.get(0));
+        if (tuner.count == 0) {
+            System.err.println("no positions");
+            System.exit(1);
+        }
+        double[][] weights = toVector(initial);
+        double k = tuner.fitScale(weights);
+        double error = tuner.pass(weights, k, false)[0];
+        System.out.println(String.format(Locale.ROOT, "%d positions, scale %.4f, error %.6f", tuner.count, k, error));
+        error = tuner.minimize(weights, k, iterations, rate);
+        centre(weights);
+
+        StringBuilder out = new StringBuilder();
+        fromVector(weights).write(out, HEADER + String.format(Locale.ROOT,
+                "\nFitted to %d positions of %s, to a mean squared error of %.6f at scale %.4f.",
+                tuner.count, Paths.get(files.get(0)).getFileName(), error, k));
+        Files.write(Paths.get(files.get(1)), out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void read(String path) throws IOException {
+        int[] counted = new int[WEIGHTS];
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                String text = line.trim();
+                int split = Math.max(text.lastIndexOf(' '), text.lastIndexOf('\t'));
+                if (text.isEmpty() || text.startsWith("#") || split < 0) {
+                    continue;
+                }
+                float result;
+                Position position;
+                try {
+                    result = result(text.substring(split + 1).replaceAll("[\"\\[\\];]", ""));
+                    String fen = text.substring(0, split).trim();
+                    if (fen.endsWith(";")) {
+                        fen = fen.substring(0, fen.length() - 1).trim();
+                    }
+                    if (fen.endsWith(" c9")) {
+                        fen = fen.substring(0, fen.length() - 3).trim();
+                    }
+                    position = Fen.parse(fen);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("line " + lineNumber + ": " + e.getMessage());
+                    continue;
+                }
+                if (!position.hasKing(Position.WHITE) || !position.hasKing(Position.BLACK)) {
+                    System.err.println("line " + lineNumber + ": a king is missing");
+                    continue;
+                }
+                add(position, result, counted);
+            }
+        }
+    }
+
+    private static float result(String text) {
+        switch (text) {
+            case "1-0":
+            case "1":
+            case "1.0":
+                return 1;
+            case "0-1":
+            case "0":
+            case "0.0":
+                return 0;
+            case "1/2-1/2":
+            case "1/2":
+            case "0.5":
+                return 0.5f;
+            default:
+                throw new IllegalArgumentException("no result in " + text);
+        }
+    }
+
+    private void add(Position position, float result, int[] counted) {
+        Arrays.fill(counted, 0);
+        for (long bits = position.occupied; bits != 0; bits &= bits - 1) {
+            int sq = Long.numberOfTrailingZeros(bits);
+            int piece = position.squares[sq];
+            int sign = Position.colorOf(piece) == Position.WHITE ? 1 : -1;
+            int type = Position.typeOf(piece);
+            counted[type * PER_TYPE] += sign;
+            counted[type * PER_TYPE + 1 + PieceSquareEvaluator.Weights.index(piece, sq)] += sign;
+        }
+        counted[MOBILITY] = MoveGenerator.countMoves(position, Position.WHITE)
+                - MoveGenerator.countMoves(position, Position.BLACK);
+
+        if (count + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            phases = Arrays.copyOf(phases, phases.length * 2);
+            results = Arrays.copyOf(results, results.length * 2);
+        }
+        int end = offsets[count];
+        if (end + WEIGHTS > features.length) {
+            features = Arrays.copyOf(features, features.length * 2);
+            coefficients = Arrays.copyOf(coefficients, coefficients.length * 2);
+        }
+        for (int i = 0; i < WEIGHTS; i++) {
+            if (counted[i] != 0) {
+                features[end] = (short) i;
+                coefficients[end++] = (short) counted[i];
+            }
+        }
+        phases[count] = (byte) PieceSquareEvaluator.phase(position);
+        results[count] = result;
+        offsets[++count] = end;
+    }
+
+    /**
+     * The scale of the logistic curve that best fits the results to {@code weights}, by golden-section search.
+     */
+    private double fitScale(double[][] weights) {
+        double low = 0.05;
+        double high = 5;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 40; i++) {
+            double a = high - ratio * (high - low);
+            double b = low + ratio * (high - low);
+            if (pass(weights, a, false)[0] < pass(weights, b, false)[0]) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Runs Adam on {@code weights} for {@code iterations} and returns the error it ends with.
+     */
+    private double minimize(double[][] weights, double k, int iterations, double rate) {
+        double[][] mean = new double[2][WEIGHTS];
+        double[][] variance = new double[2][WEIGHTS];
+        double error = 0;
+        for (int iteration = 1; iteration <= iterations; iteration++) {
+            double[] pass = pass(weights, k, true);
+            error = pass[0];
+            double correction1 = 1 - Math.pow(BETA1, iteration);
+            double correction2 = 1 - Math.pow(BETA2, iteration);
+            for (int stage = 0; stage < 2; stage++) {
+                for (int i = 0; i < WEIGHTS; i++) {
+                    double gradient = pass[1 + stage * WEIGHTS + i];
+                    mean[stage][i] = BETA1 * mean[stage][i] + (1 - BETA1) * gradient;
+                    variance[stage][i] = BETA2 * variance[stage][i] + (1 - BETA2) * gradient * gradient;
+                    weights[stage][i] -= rate * (mean[stage][i] / correction1)
+                            / (Math.sqrt(variance[stage][i] / correction2) + 1e-8);
+                }
+            }
+            if (iteration % 100 == 0) {
+                System.out.println(String.format(Locale.ROOT, "iteration %d: error %.6f", iteration, error));
+            }
+        }
+        return iterations == 0 ? pass(weights, k, false)[0] : error;
+    }
+
+    /**
+     * The mean squared error of {@code weights} over the whole set, followed by its gradient by the midgame and
+     * then the endgame weights if {@code gradient} is asked for. Each chunk of the set is its own fork-join task.
+     */
+    private double[] pass(final double[][] weights, final double k, final boolean gradient) {
+        List<RecursiveTask<double[]>> tasks = new ArrayList<>();
+        for (int from = 0; from < count; from += CHUNK) {
+            final int start = from;
+            final int end = Math.min(count, from + CHUNK);
+            RecursiveTask<double[]> task = new RecursiveTask<double[]>() {
+                @Override
+                protected double[] compute() {
+                    return pass(weights, k, gradient, start, end);
+                }
+            };
+            tasks.add(task);
+            ForkJoinPool.commonPool().execute(task);
+        }
+        double[] sum = new double[gradient ? 1 + 2 * WEIGHTS : 1];
+        for (RecursiveTask<double[]> task : tasks) {
+            double[] part = task.join();
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += part[i];
+            }
+        }
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] /= count;
+        }
+        return sum;
+    }
+
+    private double[] pass(double[][] weights, double k, boolean gradient, int start, int end) {
+        double[] midgameWeights = weights[PieceSquareEvaluator.MIDGAME];
+        double[] endgameWeights = weights[PieceSquareEvaluator.ENDGAME];
+        double[] sum = new double[gradient ? 1 + 2 * WEIGHTS : 1];
+        double scale = k * Math.log(10) / 400;
+        for (int i = start; i < end; i++) {
+            double midgame = 0;
+            double endgame = 0;
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                midgame += coefficients[j] * midgameWeights[features[j]];
+                endgame += coefficients[j] * endgameWeights[features[j]];
+            }
+            double phase = (double) phases[i] / PieceSquareEvaluator.MAX_PHASE;
+            double predicted = 1 / (1 + Math.exp(-scale * (midgame * phase + endgame * (1 - phase))));
+            double difference = predicted - results[i];
+            sum[0] += difference * difference;
+            if (gradient) {
+                double slope = 2 * difference * predicted * (1 - predicted) * scale;
+                for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                    sum[1 + features[j]] += slope * coefficients[j] * phase;
+                    sum[1 + WEIGHTS + features[j]] += slope * coefficients[j] * (1 - phase);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Moves the mean of each piece's table into its value, which leaves every evaluation as it was: a value and the
+     * squares of its table always count together. Pawns only count the squares they can stand on, and the king's
+     * value never counts.
+     */
+    private static void centre(double[][] weights) {
+        for (double[] stage : weights) {
+            for (int type = 0; type < 6; type++) {
+                if (type == Position.KING) {
+                    continue;
+                }
+                int first = type == Position.PAWN ? 8 : 0;
+                int last = type == Position.PAWN ? 56 : 64;
+                double mean = 0;
+                for (int i = first; i < last; i++) {
+                    mean += stage[type * PER_TYPE + 1 + i] / (last - first);
+                }
+                for (int i = first; i < last; i++) {
+                    stage[type * PER_TYPE + 1 + i] -= mean;
+                }
+                stage[type * PER_TYPE] += mean;
+            }
+        }
+    }
+
+    private static double[][] toVector(PieceSquareEvaluator.Weights weights) {
+        double[][] vector = new double[2][WEIGHTS];
+        for (int stage = 0; stage < 2; stage++) {
+            for (int type = 0; type < 6; type++) {
+                vector[stage][type * PER_TYPE] = weights.values[stage][type];
+                for (int i = 0; i < 64; i++) {
+                    vector[stage][type * PER_TYPE + 1 + i] = weights.squares[stage][type][i];
+                }
+            }
+            vector[stage][MOBILITY] = weights.mobility[stage];
+        }
+        return vector;
+    }
+
+    private static PieceSquareEvaluator.Weights fromVector(double[][] vector) {
+        PieceSquareEvaluator.Weights weights = new PieceSquareEvaluator.Weights();
+        for (int stage = 0; stage < 2; stage++) {
+            for (int type = 0; type < 6; type++) {
+                weights.values[stage][type] = (int) Math.round(vector[stage][type * PER_TYPE]);
+                for (int i = 0; i < 64; i++) {
+                    weights.squares[stage][type][i] = (int) Math.round(vector[stage][type * PER_TYPE + 1 + i]);
+                }
+            }
+            weights.mobility[stage] = (int) Math.round(vector[stage][MOBILITY]);
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,21 @@
+package ca.sahiljain.chess;
+
+/**
+ * Static evaluation, which {@link Search} scores the positions at its horizon with. Evaluators are shared by every
+ * search at once, so they keep no state of their own between calls.
+ */
+interface Evaluator {
+
+    /**
+     * The score of {@code position} in centipawns, from white's point of view. Both kings are on the board.
+     */
+    int evaluate(Position position);
+
+    /**
+     * The piece-square table {@link Search} has its position sum as moves are played, in the format of
+     * {@link Position#MATERIAL}.
+     */
+    default int[][] pieceSquares() {
+        return Position.MATERIAL;
+    }
+}
@@ -0,0 +1,244 @@
+package ca.sahiljain.chess;
+
+/**
+ * Reads and writes FEN straight to and from a {@link Position}, keeping all six fields. Parsing walks the characters
+ * once without splitting or boxing, and writing appends to a caller's buffer, so neither allocates beyond the
+ * position or the string it is asked for.
+ *
+ * Fields after the piece placement may be left out: white to move, no castling or en passant, and the counters at
+ * the start of a game. Anything else that isn't FEN is rejected with an {@link IllegalArgumentException} that says
+ * what is wrong and at which character.
+ */
+final class Fen {
+
+    // indexed by piece
+    private static final String PIECE_LETTERS = "RBKQNPrbkqnp";
+    // indexed by the bit of each right
+    private static final String CASTLING_LETTERS = "KQkq";
+    // the most Position keeps
+    private static final int MAX_HALFMOVE_CLOCK = 0xFFFF;
+    private static final int MAX_FULLMOVE_NUMBER = 1_000_000;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(96));
+
+    private Fen() {
+    }
+
+    static Position parse(CharSequence fen) {
+        return parse(fen, 0, fen.length());
+    }
+
+    /**
+     * Parses the FEN between {@code start} and {@code end} of {@code fen}. Whitespace around and between the fields
+     * is skipped.
+     *
+     * @throws IllegalArgumentException if it isn't a FEN
+     */
+    static Position parse(CharSequence fen, int start, int end) {
+        Position position = new Position();
+        int i = skipSpaces(fen, start, end);
+        if (i == end) {
+            throw error(start, i, "empty FEN");
+        }
+        int row = 0;
+        int column = 0;
+        for (; i < end && !isSpace(fen.charAt(i)); i++) {
+            char c = fen.charAt(i);
+            if (c == '/') {
+                if (column < 8) {
+                    throw error(start, i, "rank " + (8 - row) + " has " + column + " squares, not 8");
+                }
+                if (++row == 8) {
+                    throw error(start, i, "more than 8 ranks");
+                }
+                column = 0;
+            } else if (c >= '1' && c <= '8') {
+                column += c - '0';
+                if (column > 8) {
+                    throw error(start, i, "rank " + (8 - row) + " has more than 8 squares");
+                }
+            } else {
+                int piece = PIECE_LETTERS.indexOf(c);
+                if (piece < 0) {
+                    throw error(start, i, describe(c) + " is not a piece");
+                }
+                if (column == 8) {
+                    throw error(start, i, "rank " + (8 - row) + " has more than 8 squares");
+                }
+                if (Position.typeOf(piece) == Position.PAWN && (row == 0 || row == 7)) {
+                    throw error(start, i, "pawn on rank " + (8 - row));
+                }
+                if (Position.typeOf(piece) == Position.KING && position.pieces[piece] != 0) {
+                    throw error(start, i, "more than one " + (piece < 6 ? "white" : "black") + " king");
+                }
+                position.put(piece, Position.square(row, column++));
+            }
+        }
+        if (row < 7) {
+            throw error(start, i, "only " + (row + 1) + " ranks");
+        }
+        if (column < 8) {
+            throw error(start, i, "rank 1 has " + column + " squares, not 8");
+        }
+
+        int sideToMove = Position.WHITE;
+        i = skipSpaces(fen, i, end);
+        if (i < end) {
+            int fieldEnd = fieldEnd(fen, i, end);
+            char c = fen.charAt(i);
+            if (fieldEnd - i != 1 || c != 'w' && c != 'b') {
+                throw error(start, i, "side to move must be w or b");
+            }
+            sideToMove = c == 'w' ? Position.WHITE : Position.BLACK;
+            i = skipSpaces(fen, fieldEnd, end);
+        }
+
+        int castling = 0;
+        if (i < end) {
+            int fieldEnd = fieldEnd(fen, i, end);
+            if (fieldEnd - i != 1 || fen.charAt(i) != '-') {
+                for (int j = i; j < fieldEnd; j++) {
+                    int right = CASTLING_LETTERS.indexOf(fen.charAt(j));
+                    if (right < 0) {
+                        throw error(start, j, describe(fen.charAt(j)) + " is not a castling right");
+                    }
+                    if ((castling & 1 << right) != 0) {
+                        throw error(start, j, "castling right " + fen.charAt(j) + " given twice");
+                    }
+                    castling |= 1 << right;
+                }
+            }
+            i = skipSpaces(fen, fieldEnd, end);
+        }
+
+        int enPassant = Position.NO_SQUARE;
+        if (i < end) {
+            int fieldEnd = fieldEnd(fen, i, end);
+            if (fieldEnd - i != 1 || fen.charAt(i) != '-') {
+                char rank = sideToMove == Position.WHITE ? '6' : '3';
+                if (fieldEnd - i != 2 || fen.charAt(i) < 'a' || fen.charAt(i) > 'h' || fen.charAt(i + 1) != rank) {
+                    throw error(start, i, "en passant square must be - or on rank " + rank);
+                }
+                enPassant = (rank - '1') * 8 + fen.charAt(i) - 'a';
+            }
+            i = skipSpaces(fen, fieldEnd, end);
+        }
+
+        int halfmoveClock = 0;
+        if (i < end) {
+            int fieldEnd = fieldEnd(fen, i, end);
+            halfmoveClock = number(fen, start, i, fieldEnd, 0, MAX_HALFMOVE_CLOCK, "halfmove clock");
+            i = skipSpaces(fen, fieldEnd, end);
+        }
+
+        int fullmoveNumber = 1;
+        if (i < end) {
+            int fieldEnd = fieldEnd(fen, i, end);
+            fullmoveNumber = number(fen, start, i, fieldEnd, 1, MAX_FULLMOVE_NUMBER, "fullmove number");
+            i = skipSpaces(fen, fieldEnd, end);
+        }
+        if (i < end) {
+            throw error(start, i, "more than 6 fields");
+        }
+
+        position.setState(sideToMove, castling, enPassant, halfmoveClock, fullmoveNumber);
+        return position;
+    }
+
+    /**
+     * Appends the FEN of {@code position} to {@code out}.
+     */
+    static void write(Position position, StringBuilder out) {
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int column = 0; column < 8; column++) {
+                int piece = position.squares[Position.square(row, column)];
+                if (piece == Position.EMPTY) {
+                    empty++;
+                } else {
+                    if (empty > 0) {
+                        out.append((char) ('0' + empty));
+                        empty = 0;
+                    }
+                    out.append(PIECE_LETTERS.charAt(piece));
+                }
+            }
+            if (empty > 0) {
+                out.append((char) ('0' + empty));
+            }
+            if (row < 7) {
+                out.append('/');
+            }
+        }
+        out.append(position.sideToMove == Position.WHITE ? " w " : " b ");
+        if (position.castling == 0) {
+            out.append('-');
+        }
+        for (int i = 0; i < 4; i++) {
+            if ((position.castling & 1 << i) != 0) {
+                out.append(CASTLING_LETTERS.charAt(i));
+            }
+        }
+        out.append(' ');
+        if (position.enPassant == Position.NO_SQUARE) {
+            out.append('-');
+        } else {
+            out.append((char) ('a' + Position.column(position.enPassant)))
+                    .append((char) ('1' + (position.enPassant >>> 3)));
+        }
+        out.append(' ').append(position.halfmoveClock).append(' ').append(position.fullmoveNumber);
+    }
+
+    /**
+     * The FEN of {@code position}, written through a buffer kept per thread.
+     */
+    static String format(Position position) {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        write(position, buffer);
+        return buffer.toString();
+    }
+
+    private static int number(CharSequence fen, int start, int from, int to, int min, int max, String field) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = fen.charAt(i);
+            if (c < '0' || c > '9') {
+                throw error(start, i, field + " must be a number");
+            }
+            value = value * 10 + c - '0';
+            if (value > max) {
+                throw error(start, from, field + " is more than " + max);
+            }
+        }
+        if (value < min) {
+            throw error(start, from, field + " is less than " + min);
+        }
+        return value;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static int skipSpaces(CharSequence fen, int i, int end) {
+        while (i < end && isSpace(fen.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int fieldEnd(CharSequence fen, int i, int end) {
+        while (i < end && !isSpace(fen.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String describe(char c) {
+        return c > ' ' && c < 0x7f ? "'" + c + "'" : String.format("U+%04X", (int) c);
+    }
+
+    private static IllegalArgumentException error(int start, int at, String message) {
+        return new IllegalArgumentException("invalid FEN at character " + (at - start + 1) + ": " + message);
+    }
+}
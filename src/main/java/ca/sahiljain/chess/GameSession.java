@@ -0,0 +1,259 @@
+package ca.sahiljain.chess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One game against the engine. It keeps the position and the moves played so far, a transposition table of its
+ * own and the reply the engine expects from its opponent.
+ *
+ * After each engine move the session ponders: it searches the position after the expected reply in the background,
+ * for no longer than that move was given and at most {@code ponderMillis}. If the opponent plays the expected move,
+ * the ponder search becomes the engine's answer and is stopped when the new move's budget, counted from when
+ * pondering started, runs out, so a slow opponent gets an instant reply. Any other move stops the ponder search and
+ * starts a normal one, with the table already warm.
+ *
+ * No thread waits while the engine thinks. The session's lock is only held to read or change the game, so its state
+ * can be read meanwhile; another move is refused until the engine has answered.
+ */
+final class GameSession {
+
+    final String id;
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+    private final OpeningBook book;
+    private final SearchScheduler scheduler;
+    private final long ponderMillis;
+    private final Position position;
+    private final List<String> moves = new ArrayList<>();
+    private int expected = Move.NONE;
+    private Analysis ponder;
+    private long ponderStart;
+    // the engine's reply while it is thinking, else null
+    private CompletableFuture<SearchResult> thinking;
+    private boolean closed;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    GameSession(String id, Position start, TranspositionTable table, Tablebase tablebase, OpeningBook book,
+                SearchScheduler scheduler, long ponderMillis) {
+        this.id = id;
+        this.position = start;
+        this.table = table;
+        this.tablebase = tablebase;
+        this.book = book;
+        this.scheduler = scheduler;
+        this.ponderMillis = ponderMillis;
+    }
+
+    /**
+     * Plays the opponent's {@code uci} move, if any, then the engine's reply within {@code limits}. The result
+     * completes with the new state of the game once the engine has moved, or exceptionally with a
+     * {@link RejectedExecutionException} if the scheduler had no room for its search. Cancelling it stops the search.
+     * The engine's move is recorded in {@code metrics}.
+     *
+     * @throws IllegalArgumentException if {@code uci} is not a move in the current position
+     * @throws IllegalStateException    if the game is over or the engine is still thinking about its last move
+     * @throws RejectedExecutionException if the scheduler has no room for the search
+     */
+    CompletableFuture<String> play(String uci, final SearchLimits limits, final RequestMetrics metrics) {
+        CompletableFuture<SearchResult> reply;
+        CompletableFuture<SearchResult> pondered = null;
+        synchronized (this) {
+            lastAccess = System.currentTimeMillis();
+            if (thinking != null) {
+                throw new IllegalStateException("the engine is still thinking");
+            }
+            if (closed || ChessStatic.gameOver(position)) {
+                throw new IllegalStateException("game is already over");
+            }
+            if (uci != null) {
+                int move = Move.fromUci(position, uci);
+                if (move == Move.NONE) {
+                    throw new IllegalArgumentException("illegal move: " + uci);
+                }
+                if (ponder != null && move == expected) {
+                    final Analysis hit = ponder;
+                    ponder = null;
+                    long budget = new TimeManager(limits, position.sideToMove ^ 1, ponderStart).remaining();
+                    final ScheduledFuture<?> timer =
+                            AsyncSearch.TIMER.schedule(hit::stop, Math.max(0, budget), TimeUnit.MILLISECONDS);
+                    pondered = hit.result();
+                    pondered.whenComplete((done, failure) -> timer.cancel(false));
+                }
+                stopPondering();
+                play(move);
+                if (ChessStatic.gameOver(position)) {
+                    return CompletableFuture.completedFuture(json(null, false));
+                }
+            } else {
+                stopPondering();
+            }
+            if (pondered == null) {
+                reply = reply(limits, metrics);
+            } else {
+                // a ponder search that failed before its first iteration leaves a normal search to do
+                reply = pondered.thenCompose(result -> {
+                    if (result == null) {
+                        return reply(limits, metrics);
+                    }
+                    metrics.searched(result);
+                    return CompletableFuture.completedFuture(result);
+                });
+            }
+            thinking = reply;
+        }
+        final CompletableFuture<SearchResult> searching = reply;
+        final CompletableFuture<SearchResult> hit = pondered;
+        final CompletableFuture<String> state = searching.handle((result, failure) ->
+                answer(searching, hit, result, failure, limits));
+        state.whenComplete((done, failure) -> {
+            if (state.isCancelled()) {
+                searching.cancel(false);
+            }
+        });
+        return state;
+    }
+
+    synchronized String state() {
+        lastAccess = System.currentTimeMillis();
+        return json(null, false);
+    }
+
+    /**
+     * Stops the engine's search and any ponder search; the session is not used again.
+     */
+    synchronized void close() {
+        closed = true;
+        stopPondering();
+        if (thinking != null) {
+            thinking.cancel(false);
+        }
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * A book move, or a search of the current position. Either is recorded in {@code metrics}.
+     *
+     * @throws RejectedExecutionException if the scheduler has no room for the search
+     */
+    private CompletableFuture<SearchResult> reply(SearchLimits limits, final RequestMetrics metrics) {
+        int bookMove = book.probe(position);
+        if (bookMove != Move.NONE) {
+            metrics.book();
+            return CompletableFuture.completedFuture(
+                    new SearchResult(bookMove, 0, 0, new int[]{bookMove}, new SearchStats()));
+        }
+        final CompletableFuture<SearchResult> search =
+                ChessStatic.searchAsync(position.copy(), table, tablebase, limits, scheduler, SearchListener.NONE);
+        CompletableFuture<SearchResult> counted = search.thenApply(result -> {
+            metrics.searched(result);
+            return result;
+        });
+        counted.whenComplete((done, failure) -> {
+            if (counted.isCancelled()) {
+                search.cancel(false);
+            }
+        });
+        return counted;
+    }
+
+    /**
+     * Plays the engine's move, the {@code result} of {@code searching}, unless the search failed with
+     * {@code failure} or the game was closed meanwhile, and returns the new state of the game. The reply is a ponder
+     * hit if it came from {@code pondered}.
+     */
+    private synchronized String answer(CompletableFuture<SearchResult> searching,
+                                       CompletableFuture<SearchResult> pondered, SearchResult result,
+                                       Throwable failure, SearchLimits limits) {
+        if (thinking == searching) {
+            thinking = null;
+        }
+        if (closed) {
+            throw new CompletionException(new IllegalStateException("game is already over"));
+        }
+        if (failure != null) {
+            throw failure instanceof CompletionException ? (CompletionException) failure
+                    : new CompletionException(failure);
+        }
+        lastAccess = System.currentTimeMillis();
+        boolean ponderHit = pondered != null && result == pondered.getNow(null);
+        play(result.move);
+        expected = result.pv.length > 1 ? result.pv[1] : Move.NONE;
+        if (expected != Move.NONE && !ChessStatic.gameOver(position)) {
+            startPondering(limits);
+        }
+        return json(result, ponderHit);
+    }
+
+    private void play(int move) {
+        position.playMove(move);
+        moves.add(Move.toUci(move));
+    }
+
+    /**
+     * Ponders the expected reply for as long as {@code limits} gave the engine's move, and at most
+     * {@link #ponderMillis}. Pondering is skipped when the scheduler has no room for it.
+     */
+    private void startPondering(SearchLimits limits) {
+        final Position root = position.copy();
+        root.playMove(expected);
+        if (ChessStatic.gameOver(root)) {
+            return;
+        }
+        SearchLimits ponderLimits = limits.copy();
+        ponderLimits.maxTime = Math.min(limits.maxTime, ponderMillis);
+        final Analysis analysis = new Analysis(id);
+        try {
+            ChessStatic.searchAsync(root, table, tablebase, ponderLimits, scheduler, analysis)
+                    .whenComplete((result, failure) -> {
+                        if (failure == null) {
+                            analysis.finish(result);
+                        } else {
+                            analysis.fail("ponder search failed");
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            return;
+        }
+        ponder = analysis;
+        ponderStart = System.currentTimeMillis();
+    }
+
+    private void stopPondering() {
+        if (ponder != null) {
+            ponder.stop();
+            ponder = null;
+        }
+    }
+
+    private String json(SearchResult reply, boolean ponderHit) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"id\":\"").append(id).append("\",\"fen\":\"");
+        Fen.write(position, builder);
+        builder.append("\",\"over\":").append(ChessStatic.gameOver(position));
+        if (reply != null) {
+            builder.append(String.format(Locale.ROOT, ",\"move\":\"%s\",\"score\":%d,\"depth\":%d,\"ponderhit\":%b",
+                    Move.toUci(reply.move), reply.score, reply.depth, ponderHit));
+        }
+        if (thinking != null) {
+            builder.append(",\"thinking\":true");
+        }
+        if (ponder != null) {
+            builder.append(",\"pondering\":\"").append(Move.toUci(expected)).append('"');
+        }
+        builder.append(",\"moves\":[");
+        for (int i = 0; i < moves.size(); i++) {
+            builder.append(i == 0 ? "\"" : ",\"").append(moves.get(i)).append('"');
+        }
+        return builder.append("]}").toString();
+    }
+}
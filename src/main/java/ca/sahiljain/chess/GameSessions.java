@@ -0,0 +1,86 @@
+package ca.sahiljain.chess;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Games started over HTTP, by id. Each game has a transposition table of {@code tableMb} megabytes, so the number
+ * of games held at once is capped to fit {@code maxMb}. Games nobody has touched for {@code idleMillis} are dropped
+ * and their ponder searches stopped.
+ */
+final class GameSessions {
+
+    private final Tablebase tablebase;
+    private final OpeningBook book;
+    private final SearchScheduler scheduler;
+    private final long ponderMillis;
+    private final int tableMb;
+    private final int maxGames;
+    private final long idleMillis;
+    private final Map<String, GameSession> games = new ConcurrentHashMap<>();
+
+    GameSessions(Tablebase tablebase, OpeningBook book, SearchScheduler scheduler, long ponderMillis,
+                 int tableMb, int maxMb, long idleMillis) {
+        this.tablebase = tablebase;
+        this.book = book;
+        this.scheduler = scheduler;
+        this.ponderMillis = ponderMillis;
+        this.tableMb = tableMb;
+        this.maxGames = Math.max(1, maxMb / tableMb);
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Starts a game from {@code start}.
+     *
+     * @throws RejectedExecutionException if as many games as fit in memory are already open
+     */
+    synchronized GameSession start(Position start) {
+        evictIdle();
+        if (games.size() >= maxGames) {
+            throw new RejectedExecutionException("too many games open");
+        }
+        GameSession game = new GameSession(UUID.randomUUID().toString(), start, new TranspositionTable(tableMb),
+                tablebase, book, scheduler, ponderMillis);
+        games.put(game.id, game);
+        return game;
+    }
+
+    /**
+     * The game with {@code id}, or null if there is none or it has been idle too long.
+     */
+    GameSession get(String id) {
+        evictIdle();
+        return games.get(id);
+    }
+
+    /**
+     * Ends the game with {@code id}, returning false if there was none.
+     */
+    boolean end(String id) {
+        GameSession game = games.remove(id);
+        if (game == null) {
+            return false;
+        }
+        game.close();
+        return true;
+    }
+
+    int size() {
+        return games.size();
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Iterator<GameSession> it = games.values().iterator(); it.hasNext(); ) {
+            GameSession game = it.next();
+            if (now - game.lastAccess() > idleMillis) {
+                it.remove();
+                game.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ca.sahiljain.chess;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service-wide request and search metrics. Every route has a latency and a depth-reached histogram and a count of
+ * the statuses it answered with; the search counters of every request are added to engine-wide totals.
+ *
+ * Histograms are recorded through HdrHistogram {@link Recorder}s, which never block a request, and folded into
+ * the route's running totals when the metrics are read. Each request is also logged on one line to the
+ * {@code ca.sahiljain.chess.requests} logger.
+ */
+final class Metrics {
+
+    private static final Logger REQUEST_LOG = LoggerFactory.getLogger("ca.sahiljain.chess.requests");
+    private static final ThreadLocal<RequestMetrics> CURRENT = new ThreadLocal<>();
+    // two decimal digits of precision keeps each histogram to a few kilobytes
+    private static final int PRECISION = 2;
+
+    private final long startedAt = System.currentTimeMillis();
+    private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder tableProbes = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder tablebaseHits = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder bookMoves = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+
+    /**
+     * The metrics of the request being handled on this thread, or a no-op when there is none.
+     */
+    static RequestMetrics current() {
+        RequestMetrics request = CURRENT.get();
+        return request != null ? request : RequestMetrics.NONE;
+    }
+
+    /**
+     * Starts measuring a request to {@code route}, which code on this thread can then reach through
+     * {@link #current()} until {@link #detach()} is called.
+     */
+    RequestMetrics begin(String route) {
+        RequestMetrics request = new RequestMetrics(this, routes.computeIfAbsent(route, RouteMetrics::new));
+        CURRENT.set(request);
+        return request;
+    }
+
+    /**
+     * Ends the request this thread was handling, as far as {@link #current()} is concerned. Its metrics are still
+     * recorded until it ends.
+     */
+    static void detach() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Records that {@code request} was answered with {@code status} and logs it.
+     */
+    void end(RequestMetrics request, int status) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - request.startNanos);
+        request.route.latency.recordValue(micros);
+        request.route.statuses.computeIfAbsent(status, code -> new LongAdder()).increment();
+        if (REQUEST_LOG.isInfoEnabled()) {
+            REQUEST_LOG.info("route=\"{}\" status={} latencyMs={} {}", request.route.name, status,
+                    String.format(Locale.ROOT, "%.1f", micros / 1000.0), request.summary(micros));
+        }
+    }
+
+    void searched(RouteMetrics route, SearchResult result) {
+        route.depth.recordValue(result.depth);
+        SearchStats stats = result.stats;
+        searches.increment();
+        nodes.add(stats.nodes);
+        cutoffs.add(stats.cutoffs);
+        tableProbes.add(stats.tableProbes);
+        tableHits.add(stats.tableHits);
+        tablebaseHits.add(stats.tablebaseHits);
+        evaluations.add(stats.evaluations);
+    }
+
+    void book() {
+        bookMoves.increment();
+    }
+
+    void cached() {
+        cacheHits.increment();
+    }
+
+    /**
+     * Everything measured since startup, as JSON. Latencies are in milliseconds.
+     */
+    String json() {
+        long probes = tableProbes.sum();
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT,
+                "{\"uptimeSeconds\":%d,\"engine\":{\"searches\":%d,\"nodes\":%d,\"cutoffs\":%d,\"tableProbes\":%d,"
+                        + "\"tableHits\":%d,\"tableHitRatio\":%.4f,\"tablebaseHits\":%d,\"evaluations\":%d,"
+                        + "\"bookMoves\":%d,\"cacheHits\":%d},\"routes\":{",
+                (System.currentTimeMillis() - startedAt) / 1000, searches.sum(), nodes.sum(), cutoffs.sum(), probes,
+                tableHits.sum(), probes == 0 ? 0.0 : (double) tableHits.sum() / probes, tablebaseHits.sum(),
+                evaluations.sum(), bookMoves.sum(), cacheHits.sum()));
+        boolean first = true;
+        for (RouteMetrics route : new TreeMap<>(routes).values()) {
+            builder.append(first ? "" : ",");
+            route.json(builder);
+            first = false;
+        }
+        return builder.append("}}").toString();
+    }
+
+    /**
+     * The histograms and status counts of one route, named by its method and path pattern.
+     */
+    static final class RouteMetrics {
+
+        final String name;
+        final Recorder latency = new Recorder(PRECISION);
+        final Recorder depth = new Recorder(PRECISION);
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final Histogram latencyTotal = new Histogram(PRECISION);
+        private final Histogram depthTotal = new Histogram(PRECISION);
+        private Histogram latencyInterval;
+        private Histogram depthInterval;
+
+        RouteMetrics(String name) {
+            this.name = name;
+        }
+
+        private synchronized void json(StringBuilder builder) {
+            latencyInterval = latency.getIntervalHistogram(latencyInterval);
+            latencyTotal.add(latencyInterval);
+            depthInterval = depth.getIntervalHistogram(depthInterval);
+            depthTotal.add(depthInterval);
+            builder.append('"').append(name).append("\":{\"requests\":").append(latencyTotal.getTotalCount())
+                    .append(",\"statuses\":{");
+            boolean first = true;
+            for (Map.Entry<Integer, LongAdder> status : new TreeMap<>(statuses).entrySet()) {
+                builder.append(first ? "\"" : ",\"").append(status.getKey()).append("\":")
+                        .append(status.getValue().sum());
+                first = false;
+            }
+            builder.append(String.format(Locale.ROOT,
+                    "},\"latencyMs\":{\"p50\":%.1f,\"p90\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f,"
+                            + "\"mean\":%.1f},\"depth\":{\"searches\":%d,\"p50\":%d,\"p90\":%d,\"min\":%d,\"max\":%d}}",
+                    millis(latencyTotal.getValueAtPercentile(50)), millis(latencyTotal.getValueAtPercentile(90)),
+                    millis(latencyTotal.getValueAtPercentile(99)), millis(latencyTotal.getValueAtPercentile(99.9)),
+                    millis(latencyTotal.getMaxValue()), latencyTotal.getMean() / 1000,
+                    depthTotal.getTotalCount(), depthTotal.getValueAtPercentile(50),
+                    depthTotal.getValueAtPercentile(90), depthTotal.getTotalCount() == 0 ? 0 : depthTotal.getMinValue(),
+                    depthTotal.getMaxValue()));
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ca.sahiljain.chess;
+
+/**
+ * Moves are packed into the low 16 bits of an int: from square (6 bits), to square (6 bits) and a 4 bit flag.
+ * In the flag, 4 marks a capture and 8 a promotion, whose low two bits give the piece promoted to.
+ * Castling is a king move of two squares, as in UCI.
+ */
+final class Move {
+
+    static final int NONE = 0;
+
+    static final int QUIET = 0;
+    static final int DOUBLE_PUSH = 1;
+    static final int KING_CASTLE = 2;
+    static final int QUEEN_CASTLE = 3;
+    static final int CAPTURE = 4;
+    static final int EN_PASSANT = 5;
+    static final int KNIGHT_PROMOTION = 8;
+    static final int QUEEN_PROMOTION = 11;
+    static final int KNIGHT_PROMOTION_CAPTURE = 12;
+    static final int QUEEN_PROMOTION_CAPTURE = 15;
+
+    // indexed by the low two bits of a promotion flag
+    private static final int[] PROMOTION_TYPES = {Position.KNIGHT, Position.BISHOP, Position.ROOK, Position.QUEEN};
+    private static final String PROMOTION_LETTERS = "nbrq";
+
+    private Move() {
+    }
+
+    static int encode(int from, int to, int flag) {
+        return from | (to << 6) | (flag << 12);
+    }
+
+    static int from(int move) {
+        return move & 0x3F;
+    }
+
+    static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    static int flag(int move) {
+        return (move >>> 12) & 0xF;
+    }
+
+    static boolean isCapture(int move) {
+        return (flag(move) & CAPTURE) != 0;
+    }
+
+    static boolean isPromotion(int move) {
+        return (flag(move) & 8) != 0;
+    }
+
+    /**
+     * Type of the piece a promotion promotes to.
+     */
+    static int promotionType(int move) {
+        return PROMOTION_TYPES[flag(move) & 3];
+    }
+
+    static boolean isUnderpromotion(int move) {
+        return isPromotion(move) && (flag(move) & 3) != 3;
+    }
+
+    static boolean isCastle(int move) {
+        int flag = flag(move);
+        return flag == KING_CASTLE || flag == QUEEN_CASTLE;
+    }
+
+    /**
+     * The move in UCI coordinate notation, such as {@code e2e4}, {@code e1g1} or {@code e7e8q}.
+     */
+    static String toUci(int move) {
+        String text = squareName(from(move)) + squareName(to(move));
+        return isPromotion(move) ? text + PROMOTION_LETTERS.charAt(flag(move) & 3) : text;
+    }
+
+    /**
+     * The move of the side to move in {@code position} that {@code text} names in UCI coordinate notation,
+     * or {@link #NONE} if there is no such move.
+     */
+    static int fromUci(Position position, String text) {
+        return fromUci(position, text, 0, text.length(), MoveGenerator.buffer());
+    }
+
+    /**
+     * {@link #fromUci(Position, String)} for the characters between {@code start} and {@code end} of {@code text},
+     * generating the position's moves into {@code moves}.
+     */
+    static int fromUci(Position position, CharSequence text, int start, int end, int[] moves) {
+        int length = end - start;
+        int promotion = length == 5 ? PROMOTION_LETTERS.indexOf(text.charAt(start + 4)) : -1;
+        if (length < 4 || length > 5 || length == 5 && promotion < 0) {
+            return NONE;
+        }
+        int from = parseSquare(text, start);
+        int to = parseSquare(text, start + 2);
+        if (from < 0 || to < 0) {
+            return NONE;
+        }
+        int count = MoveGenerator.generateMoves(position, position.sideToMove, moves, 0);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (from(move) == from && to(move) == to
+                    && (isPromotion(move) ? (flag(move) & 3) == promotion : promotion < 0)) {
+                return move;
+            }
+        }
+        return NONE;
+    }
+
+    private static int parseSquare(CharSequence text, int index) {
+        int file = text.charAt(index) - 'a';
+        int rank = text.charAt(index + 1) - '1';
+        return file >= 0 && file < 8 && rank >= 0 && rank < 8 ? rank * 8 + file : -1;
+    }
+
+    private static String squareName(int sq) {
+        return new String(new char[]{(char) ('a' + (sq & 7)), (char) ('1' + (sq >>> 3))});
+    }
+}
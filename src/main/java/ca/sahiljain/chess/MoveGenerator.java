@@ -0,0 +1,260 @@
+package ca.sahiljain.chess;
+
+/**
+ * Pseudo-legal move generation on a {@link Position}. Moves are written into a caller supplied buffer.
+ * Captures and quiet moves can be generated separately. Captures include en passant and every promotion, and quiet
+ * moves include castling, so together the two give exactly the moves of {@link #generateMoves}.
+ *
+ * Castling is only generated when the king is not attacked and does not pass over an attacked square. Whether
+ * it lands on one, like any other move leaving the king attacked, is left to the caller.
+ */
+final class MoveGenerator {
+
+    static final int MAX_MOVES = 256;
+
+    private static final long RANK_1 = 0xFFL;
+    private static final long RANK_3 = 0xFFL << 16;
+    private static final long RANK_6 = 0xFFL << 40;
+    private static final long RANK_8 = 0xFFL << 56;
+    private static final long FILE_A = 0x0101010101010101L;
+    private static final long FILE_H = FILE_A << 7;
+
+    // which moves generate writes besides piece moves onto its targets
+    private static final int PAWN_CAPTURES = 1;
+    private static final int PAWN_PROMOTIONS = 2;
+    private static final int PAWN_PUSHES = 4;
+    private static final int CASTLING = 8;
+
+    private static final long WHITE_KINGSIDE_EMPTY = 0x60L;
+    private static final long WHITE_QUEENSIDE_EMPTY = 0x0EL;
+    private static final long BLACK_KINGSIDE_EMPTY = WHITE_KINGSIDE_EMPTY << 56;
+    private static final long BLACK_QUEENSIDE_EMPTY = WHITE_QUEENSIDE_EMPTY << 56;
+
+    // for callers outside a search, which keep no buffer of their own
+    private static final ThreadLocal<int[]> BUFFER = ThreadLocal.withInitial(() -> new int[MAX_MOVES]);
+
+    private MoveGenerator() {
+    }
+
+    /**
+     * A buffer of {@link #MAX_MOVES} for the calling thread, reused by every call on it.
+     */
+    static int[] buffer() {
+        return BUFFER.get();
+    }
+
+    /**
+     * Whether {@code move} is one of the moves {@link #generateMoves} gives the side to move in {@code position}.
+     */
+    static boolean isMove(Position position, int move) {
+        int[] moves = BUFFER.get();
+        int end = generateMoves(position, position.sideToMove, moves, 0);
+        for (int i = 0; i < end; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the moves of {@code color} into {@code moves} starting at {@code start}, returning the new end index.
+     */
+    static int generateMoves(Position position, int color, int[] moves, int start) {
+        return generate(position, color, moves, start, ~position.colors[color],
+                PAWN_CAPTURES | PAWN_PROMOTIONS | PAWN_PUSHES | CASTLING);
+    }
+
+    /**
+     * Like {@link #generateMoves}, but only captures and promotions.
+     */
+    static int generateCaptures(Position position, int color, int[] moves, int start) {
+        return generate(position, color, moves, start, position.colors[color ^ 1], PAWN_CAPTURES | PAWN_PROMOTIONS);
+    }
+
+    /**
+     * Like {@link #generateMoves}, but only moves that neither capture nor promote.
+     */
+    static int generateQuiets(Position position, int color, int[] moves, int start) {
+        return generate(position, color, moves, start, ~position.occupied, PAWN_PUSHES | CASTLING);
+    }
+
+    private static int generate(Position position, int color, int[] moves, int start, long targets, int kinds) {
+        int count = start;
+        long enemy = position.colors[color ^ 1];
+        long occupied = position.occupied;
+
+        count = generatePawnMoves(position, color, kinds, moves, count);
+        for (long knights = position.pieces(color, Position.KNIGHT); knights != 0; knights &= knights - 1) {
+            int from = Long.numberOfTrailingZeros(knights);
+            count = addMoves(from, Attacks.KNIGHT[from] & targets, enemy, moves, count);
+        }
+        for (long bishops = position.pieces(color, Position.BISHOP); bishops != 0; bishops &= bishops - 1) {
+            int from = Long.numberOfTrailingZeros(bishops);
+            count = addMoves(from, Attacks.bishop(from, occupied) & targets, enemy, moves, count);
+        }
+        for (long rooks = position.pieces(color, Position.ROOK); rooks != 0; rooks &= rooks - 1) {
+            int from = Long.numberOfTrailingZeros(rooks);
+            count = addMoves(from, Attacks.rook(from, occupied) & targets, enemy, moves, count);
+        }
+        for (long queens = position.pieces(color, Position.QUEEN); queens != 0; queens &= queens - 1) {
+            int from = Long.numberOfTrailingZeros(queens);
+            count = addMoves(from, Attacks.queen(from, occupied) & targets, enemy, moves, count);
+        }
+        for (long kings = position.pieces(color, Position.KING); kings != 0; kings &= kings - 1) {
+            int from = Long.numberOfTrailingZeros(kings);
+            count = addMoves(from, Attacks.KING[from] & targets, enemy, moves, count);
+        }
+        if ((kinds & CASTLING) != 0 && position.castling != 0) {
+            count = generateCastling(position, color, moves, count);
+        }
+        return count;
+    }
+
+    private static int generateCastling(Position position, int color, int[] moves, int count) {
+        long occupied = position.occupied;
+        int enemy = color ^ 1;
+        int king = color == Position.WHITE ? 4 : 60;
+        int kingside = color == Position.WHITE ? Position.WHITE_KINGSIDE : Position.BLACK_KINGSIDE;
+        int queenside = color == Position.WHITE ? Position.WHITE_QUEENSIDE : Position.BLACK_QUEENSIDE;
+        long kingsideEmpty = color == Position.WHITE ? WHITE_KINGSIDE_EMPTY : BLACK_KINGSIDE_EMPTY;
+        long queensideEmpty = color == Position.WHITE ? WHITE_QUEENSIDE_EMPTY : BLACK_QUEENSIDE_EMPTY;
+        boolean canKingside = (position.castling & kingside) != 0 && (occupied & kingsideEmpty) == 0;
+        boolean canQueenside = (position.castling & queenside) != 0 && (occupied & queensideEmpty) == 0;
+        if ((canKingside || canQueenside) && !position.isAttacked(king, enemy)) {
+            if (canKingside && !position.isAttacked(king + 1, enemy)) {
+                moves[count++] = Move.encode(king, king + 2, Move.KING_CASTLE);
+            }
+            if (canQueenside && !position.isAttacked(king - 1, enemy)) {
+                moves[count++] = Move.encode(king, king - 2, Move.QUEEN_CASTLE);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of moves {@link #generateMoves} would produce, computed from attack sets without writing any moves.
+     * For speed it counts each promotion once and leaves out castling and en passant.
+     */
+    static int countMoves(Position position, int color) {
+        long targets = ~position.colors[color];
+        long occupied = position.occupied;
+        long empty = ~occupied;
+        long enemy = position.colors[color ^ 1];
+        long pawns = position.pieces(color, Position.PAWN);
+        int count;
+        if (color == Position.WHITE) {
+            long single = (pawns << 8) & empty;
+            count = Long.bitCount(single) + Long.bitCount(((single & RANK_3) << 8) & empty)
+                    + Long.bitCount(((pawns & ~FILE_A) << 7) & enemy) + Long.bitCount(((pawns & ~FILE_H) << 9) & enemy);
+        } else {
+            long single = (pawns >>> 8) & empty;
+            count = Long.bitCount(single) + Long.bitCount(((single & RANK_6) >>> 8) & empty)
+                    + Long.bitCount(((pawns & ~FILE_H) >>> 7) & enemy) + Long.bitCount(((pawns & ~FILE_A) >>> 9) & enemy);
+        }
+        for (long knights = position.pieces(color, Position.KNIGHT); knights != 0; knights &= knights - 1) {
+            count += Long.bitCount(Attacks.KNIGHT[Long.numberOfTrailingZeros(knights)] & targets);
+        }
+        for (long bishops = position.pieces(color, Position.BISHOP); bishops != 0; bishops &= bishops - 1) {
+            count += Long.bitCount(Attacks.bishop(Long.numberOfTrailingZeros(bishops), occupied) & targets);
+        }
+        for (long rooks = position.pieces(color, Position.ROOK); rooks != 0; rooks &= rooks - 1) {
+            count += Long.bitCount(Attacks.rook(Long.numberOfTrailingZeros(rooks), occupied) & targets);
+        }
+        for (long queens = position.pieces(color, Position.QUEEN); queens != 0; queens &= queens - 1) {
+            count += Long.bitCount(Attacks.queen(Long.numberOfTrailingZeros(queens), occupied) & targets);
+        }
+        for (long kings = position.pieces(color, Position.KING); kings != 0; kings &= kings - 1) {
+            count += Long.bitCount(Attacks.KING[Long.numberOfTrailingZeros(kings)] & targets);
+        }
+        return count;
+    }
+
+    private static int generatePawnMoves(Position position, int color, int kinds, int[] moves, int count) {
+        long pawns = position.pieces(color, Position.PAWN);
+        long empty = ~position.occupied;
+        long enemy = position.colors[color ^ 1];
+        long single, twice, left, right;
+        int forward;
+        long promotionRank;
+        if (color == Position.WHITE) {
+            single = (pawns << 8) & empty;
+            twice = ((single & RANK_3) << 8) & empty;
+            left = ((pawns & ~FILE_A) << 7) & enemy;
+            right = ((pawns & ~FILE_H) << 9) & enemy;
+            forward = 8;
+            promotionRank = RANK_8;
+        } else {
+            single = (pawns >>> 8) & empty;
+            twice = ((single & RANK_6) >>> 8) & empty;
+            left = ((pawns & ~FILE_A) >>> 9) & enemy;
+            right = ((pawns & ~FILE_H) >>> 7) & enemy;
+            forward = -8;
+            promotionRank = RANK_1;
+        }
+        if ((kinds & PAWN_PUSHES) == 0) {
+            single &= promotionRank;
+            twice = 0;
+        }
+        if ((kinds & PAWN_PROMOTIONS) == 0) {
+            single &= ~promotionRank;
+        }
+        if ((kinds & PAWN_CAPTURES) == 0) {
+            left = 0;
+            right = 0;
+        }
+        for (; single != 0; single &= single - 1) {
+            int to = Long.numberOfTrailingZeros(single);
+            if (((1L << to) & promotionRank) != 0) {
+                count = addPromotions(to - forward, to, Move.QUEEN_PROMOTION, moves, count);
+            } else {
+                moves[count++] = Move.encode(to - forward, to, Move.QUIET);
+            }
+        }
+        for (; twice != 0; twice &= twice - 1) {
+            int to = Long.numberOfTrailingZeros(twice);
+            moves[count++] = Move.encode(to - 2 * forward, to, Move.DOUBLE_PUSH);
+        }
+        for (; left != 0; left &= left - 1) {
+            int to = Long.numberOfTrailingZeros(left);
+            if (((1L << to) & promotionRank) != 0) {
+                count = addPromotions(to - forward + 1, to, Move.QUEEN_PROMOTION_CAPTURE, moves, count);
+            } else {
+                moves[count++] = Move.encode(to - forward + 1, to, Move.CAPTURE);
+            }
+        }
+        for (; right != 0; right &= right - 1) {
+            int to = Long.numberOfTrailingZeros(right);
+            if (((1L << to) & promotionRank) != 0) {
+                count = addPromotions(to - forward - 1, to, Move.QUEEN_PROMOTION_CAPTURE, moves, count);
+            } else {
+                moves[count++] = Move.encode(to - forward - 1, to, Move.CAPTURE);
+            }
+        }
+        int ep = position.enPassant;
+        if ((kinds & PAWN_CAPTURES) != 0 && ep != Position.NO_SQUARE) {
+            for (long from = Attacks.PAWN[color ^ 1][ep] & pawns; from != 0; from &= from - 1) {
+                moves[count++] = Move.encode(Long.numberOfTrailingZeros(from), ep, Move.EN_PASSANT);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the promotions of a pawn from {@code from} to {@code to}, queen first, given the queen's flag.
+     */
+    private static int addPromotions(int from, int to, int queenFlag, int[] moves, int count) {
+        for (int flag = queenFlag; flag > queenFlag - 4; flag--) {
+            moves[count++] = Move.encode(from, to, flag);
+        }
+        return count;
+    }
+
+    private static int addMoves(int from, long targets, long enemy, int[] moves, int count) {
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            moves[count++] = Move.encode(from, to, ((1L << to) & enemy) != 0 ? Move.CAPTURE : Move.QUIET);
+        }
+        return count;
+    }
+}
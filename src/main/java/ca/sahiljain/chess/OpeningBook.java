@@ -0,0 +1,125 @@
+package ca.sahiljain.chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opening book read in place from a memory-mapped file. Lookups binary search the mapping directly, so they
+ * copy nothing onto the heap, and every service instance on a host shares the same pages through the OS page cache.
+ *
+ * The file starts with a 16 byte header: the magic {@code CHESSBK1}, then the key of the start position under the
+ * {@link Zobrist} keys the book was built with. After that come 12 byte entries sorted by key: key (8 bytes),
+ * move (2) and weight (2), all big-endian. {@link BookBuilder} writes the files.
+ */
+final class OpeningBook {
+
+    static final long MAGIC = 0x4348455353424B31L;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 12;
+
+    private final ByteBuffer buffer;
+    private final int entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private OpeningBook(ByteBuffer buffer, int entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    static OpeningBook empty() {
+        return new OpeningBook(ByteBuffer.allocate(0), 0);
+    }
+
+    /**
+     * Maps the book at {@code path} read-only.
+     *
+     * @throws IOException if the file can't be read or is not a book built with the current keys
+     */
+    static OpeningBook open(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_BYTES || buffer.getLong(0) != MAGIC
+                || (buffer.capacity() - HEADER_BYTES) % ENTRY_BYTES != 0) {
+            throw new IOException(path + " is not an opening book");
+        }
+        if (buffer.getLong(8) != startKey()) {
+            throw new IOException(path + " was built with different Zobrist keys; rebuild it");
+        }
+        return new OpeningBook(buffer, (buffer.capacity() - HEADER_BYTES) / ENTRY_BYTES);
+    }
+
+    static long startKey() {
+        return Fen.parse(Board.START_FEN).key;
+    }
+
+    /**
+     * A book move for the side to move, picked at random in proportion to the entries' weights,
+     * or {@link Move#NONE} if the position is not in the book.
+     */
+    int probe(Position position) {
+        long key = position.key;
+        int low = 0;
+        int high = entries;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keyAt(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int total = 0;
+        for (int i = low; i < entries && keyAt(i) == key; i++) {
+            total += weightAt(i);
+        }
+        if (total > 0) {
+            int pick = ThreadLocalRandom.current().nextInt(total);
+            for (int i = low; ; i++) {
+                pick -= weightAt(i);
+                if (pick < 0) {
+                    int move = moveAt(i);
+                    // a key collision must not play a move from some other position
+                    if (MoveGenerator.isMove(position, move)) {
+                        hits.increment();
+                        return move;
+                    }
+                    break;
+                }
+            }
+        }
+        misses.increment();
+        return Move.NONE;
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    private long keyAt(int i) {
+        return buffer.getLong(HEADER_BYTES + i * ENTRY_BYTES);
+    }
+
+    private int moveAt(int i) {
+        return buffer.getShort(HEADER_BYTES + i * ENTRY_BYTES + 8) & 0xFFFF;
+    }
+
+    private int weightAt(int i) {
+        return buffer.getShort(HEADER_BYTES + i * ENTRY_BYTES + 10) & 0xFFFF;
+    }
+}
@@ -0,0 +1,272 @@
+package ca.sahiljain.chess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaves of the legal move tree to a fixed depth, the standard check of a move generator against known
+ * numbers. Moves come from {@link MoveGenerator} and are played with make and unmake; a move that leaves the mover's
+ * king attacked is not counted.
+ *
+ * With bulk counting the last ply counts the legal moves instead of playing into each leaf. In parallel mode every
+ * root move is counted as its own fork-join task.
+ *
+ * Usage: {@code Perft [-divide] [-bulk] [-parallel] <depth> [fen]} counts one position, the start position by default,
+ * with {@code -divide} printing the count below each root move. {@code Perft -suite [depth]} checks the standard
+ * test positions against their published counts, to at most {@code depth} plies.
+ */
+public final class Perft {
+
+    private static final String[] SUITE_FENS = {
+            Board.START_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+    };
+    // leaves at depth 1, 2, ... of each suite position
+    private static final long[][] SUITE_COUNTS = {
+            {20, 400, 8902, 197281, 4865609, 119060324},
+            {48, 2039, 97862, 4085603, 193690690},
+            {14, 191, 2812, 43238, 674624, 11030083},
+            {6, 264, 9467, 422333, 15833292},
+            {44, 1486, 62379, 2103487, 89941194},
+            {46, 2079, 89890, 3894594, 164075551},
+    };
+
+    private final Position position;
+    private final boolean bulk;
+    private final int[] moves = new int[Search.MAX_PLY * MoveGenerator.MAX_MOVES];
+
+    Perft(Position position, boolean bulk) {
+        this.position = position;
+        this.bulk = bulk;
+    }
+
+    /**
+     * Leaves of the legal move tree {@code depth} plies below the position.
+     *
+     * @throws IllegalArgumentException if {@code depth} is negative or more than {@link Search#MAX_PLY}
+     */
+    long count(int depth) {
+        if (depth < 0 || depth > Search.MAX_PLY) {
+            throw new IllegalArgumentException("depth must be from 0 to " + Search.MAX_PLY);
+        }
+        return depth == 0 ? 1 : count(depth, 0);
+    }
+
+    /**
+     * Leaves below each legal root move, in the order of {@link #legalMoves}.
+     *
+     * @throws IllegalArgumentException if {@code depth} is less than 1 or more than {@link Search#MAX_PLY}
+     */
+    long[] divide(int depth, boolean parallel) {
+        if (depth < 1 || depth > Search.MAX_PLY) {
+            throw new IllegalArgumentException("depth must be from 1 to " + Search.MAX_PLY);
+        }
+        final int[] rootMoves = legalMoves(position);
+        long[] counts = new long[rootMoves.length];
+        if (!parallel) {
+            for (int i = 0; i < rootMoves.length; i++) {
+                int undo = position.makeMove(rootMoves[i]);
+                counts[i] = count(depth - 1);
+                position.unmakeMove(rootMoves[i], undo);
+            }
+            return counts;
+        }
+        List<RecursiveTask<Long>> tasks = new ArrayList<>(rootMoves.length);
+        for (final int move : rootMoves) {
+            final Position child = position.copy();
+            child.makeMove(move);
+            tasks.add(new RecursiveTask<Long>() {
+                @Override
+                protected Long compute() {
+                    return new Perft(child, bulk).count(depth - 1);
+                }
+            });
+        }
+        for (RecursiveTask<Long> task : tasks) {
+            ForkJoinPool.commonPool().execute(task);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = tasks.get(i).join();
+        }
+        return counts;
+    }
+
+    /**
+     * The moves of the side to move in {@code position} that don't leave its king attacked.
+     */
+    static int[] legalMoves(Position position) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int end = MoveGenerator.generateMoves(position, position.sideToMove, moves, 0);
+        int legal = 0;
+        for (int i = 0; i < end; i++) {
+            if (isLegal(position, moves[i])) {
+                moves[legal++] = moves[i];
+            }
+        }
+        int[] result = new int[legal];
+        System.arraycopy(moves, 0, result, 0, legal);
+        return result;
+    }
+
+    private long count(int depth, int ply) {
+        int color = position.sideToMove;
+        int start = ply * MoveGenerator.MAX_MOVES;
+        int end = MoveGenerator.generateMoves(position, color, moves, start);
+        long leaves = 0;
+        for (int i = start; i < end; i++) {
+            int move = moves[i];
+            int undo = position.makeMove(move);
+            if (!position.inCheck(color)) {
+                leaves += depth == 1 ? 1 : bulk && depth == 2 ? countLegal() : count(depth - 1, ply + 1);
+            }
+            position.unmakeMove(move, undo);
+        }
+        return leaves;
+    }
+
+    /**
+     * Legal moves of the side to move, counted without going a ply deeper.
+     */
+    private long countLegal() {
+        int color = position.sideToMove;
+        int start = (Search.MAX_PLY - 1) * MoveGenerator.MAX_MOVES;
+        int end = MoveGenerator.generateMoves(position, color, moves, start);
+        long legal = 0;
+        for (int i = start; i < end; i++) {
+            if (isLegal(position, moves[i])) {
+                legal++;
+            }
+        }
+        return legal;
+    }
+
+    private static boolean isLegal(Position position, int move) {
+        int color = position.sideToMove;
+        int undo = position.makeMove(move);
+        boolean legal = !position.inCheck(color);
+        position.unmakeMove(move, undo);
+        return legal;
+    }
+
+    public static void main(String[] args) {
+        boolean divide = false;
+        boolean bulk = false;
+        boolean parallel = false;
+        boolean suite = false;
+        List<String> rest = new ArrayList<>();
+        for (String arg : args) {
+            switch (arg) {
+                case "-divide":
+                    divide = true;
+                    break;
+                case "-bulk":
+                    bulk = true;
+                    break;
+                case "-parallel":
+                    parallel = true;
+                    break;
+                case "-suite":
+                    suite = true;
+                    break;
+                default:
+                    rest.add(arg);
+            }
+        }
+        if (suite) {
+            int maxDepth = rest.isEmpty() ? 4 : depth(rest.get(0));
+            System.exit(runSuite(maxDepth, bulk, parallel) ? 0 : 1);
+        }
+        if (rest.isEmpty()) {
+            usage();
+        }
+        int depth = depth(rest.get(0));
+        String fen = rest.size() > 1 ? String.join(" ", rest.subList(1, rest.size())) : Board.START_FEN;
+        Perft perft;
+        try {
+            perft = new Perft(Fen.parse(fen), bulk);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        long start = System.nanoTime();
+        long total;
+        if (divide || parallel) {
+            int[] rootMoves = legalMoves(perft.position);
+            long[] counts = perft.divide(depth, parallel);
+            total = 0;
+            for (int i = 0; i < rootMoves.length; i++) {
+                if (divide) {
+                    System.out.println(Move.toUci(rootMoves[i]) + ": " + counts[i]);
+                }
+                total += counts[i];
+            }
+            if (divide) {
+                System.out.println();
+            }
+        } else {
+            total = perft.count(depth);
+        }
+        report("perft(" + depth + ")", total, System.nanoTime() - start);
+    }
+
+    /**
+     * The depth argument {@code text}, exiting with the usage line unless it is from 1 to {@link Search#MAX_PLY}.
+     */
+    private static int depth(String text) {
+        int depth = 0;
+        try {
+            depth = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        if (depth < 1 || depth > Search.MAX_PLY) {
+            usage();
+        }
+        return depth;
+    }
+
+    private static void usage() {
+        System.err.println("usage: Perft [-divide] [-bulk] [-parallel] <depth> [fen] | Perft -suite [depth]");
+        System.err.println("depth is from 1 to " + Search.MAX_PLY);
+        System.exit(2);
+    }
+
+    private static boolean runSuite(int maxDepth, boolean bulk, boolean parallel) {
+        boolean passed = true;
+        for (int p = 0; p < SUITE_FENS.length; p++) {
+            for (int depth = 1; depth <= Math.min(maxDepth, SUITE_COUNTS[p].length); depth++) {
+                Perft perft = new Perft(Fen.parse(SUITE_FENS[p]), bulk);
+                long start = System.nanoTime();
+                long total = 0;
+                if (parallel) {
+                    for (long count : perft.divide(depth, true)) {
+                        total += count;
+                    }
+                } else {
+                    total = perft.count(depth);
+                }
+                long expected = SUITE_COUNTS[p][depth - 1];
+                report(String.format(Locale.ROOT, "position %d perft(%d)", p + 1, depth), total,
+                        System.nanoTime() - start);
+                if (total != expected) {
+                    System.out.println("  FAILED: expected " + expected);
+                    passed = false;
+                }
+            }
+        }
+        return passed;
+    }
+
+    private static void report(String label, long total, long nanos) {
+        System.out.println(String.format(Locale.ROOT, "%s = %d in %d ms, %.1f Mnps", label, total,
+                nanos / 1_000_000, total * 1000.0 / Math.max(1, nanos)));
+    }
+}
@@ -0,0 +1,177 @@
+package ca.sahiljain.chess;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigParseOptions;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Material and piece-square tables, with separate midgame and endgame weights blended by how much material is left,
+ * plus a bonus for every move a side has. The weights are read from a parameter file, as written by
+ * {@link EvaluationTuner}; {@link #DEFAULT} has those of the bundled {@code evaluation.conf}.
+ *
+ * Each piece's value and square weight are packed into one int per square, midgame in the low 16 bits. A
+ * {@link Search} has its position keep the sum of them up to date as pieces move, so an evaluation there only counts
+ * moves and blends; any other position has the sum worked out from its pieces.
+ */
+final class PieceSquareEvaluator implements Evaluator {
+
+    static final int MIDGAME = 0;
+    static final int ENDGAME = 1;
+    // the midgame weight at its height, with all pieces on the board
+    static final int MAX_PHASE = 24;
+    // indexed by piece type
+    static final String[] NAMES = {"rook", "bishop", "king", "queen", "knight", "pawn"};
+    // how much each piece type counts towards the midgame, indexed by piece type
+    private static final int[] PHASE = {2, 1, 0, 4, 1, 0};
+
+    static final PieceSquareEvaluator DEFAULT = new PieceSquareEvaluator(Weights.read(ConfigFactory.parseResources(
+            PieceSquareEvaluator.class.getClassLoader(), "evaluation.conf",
+            ConfigParseOptions.defaults().setAllowMissing(false))));
+
+    // indexed by piece and square, white's weights positive and black's negative
+    final int[][] table = new int[12][64];
+    final Weights weights;
+
+    PieceSquareEvaluator(Weights weights) {
+        this.weights = weights;
+        for (int piece = 0; piece < 12; piece++) {
+            int type = Position.typeOf(piece);
+            boolean white = Position.colorOf(piece) == Position.WHITE;
+            for (int sq = 0; sq < 64; sq++) {
+                int index = Weights.index(piece, sq);
+                int packed = pack(weights.values[MIDGAME][type] + weights.squares[MIDGAME][type][index],
+                        weights.values[ENDGAME][type] + weights.squares[ENDGAME][type][index]);
+                table[piece][sq] = white ? packed : -packed;
+            }
+        }
+    }
+
+    /**
+     * The evaluator with the weights in the file at {@code path}.
+     */
+    static PieceSquareEvaluator load(String path) {
+        return new PieceSquareEvaluator(Weights.read(ConfigFactory.parseFile(new File(path),
+                ConfigParseOptions.defaults().setAllowMissing(false))));
+    }
+
+    @Override
+    public int evaluate(Position position) {
+        int mobility = MoveGenerator.countMoves(position, Position.WHITE)
+                - MoveGenerator.countMoves(position, Position.BLACK);
+        int score = position.pieceSquares == table ? position.pieceSquareScore : position.sum(table);
+        int midgame = midgame(score) + weights.mobility[MIDGAME] * mobility;
+        int endgame = endgame(score) + weights.mobility[ENDGAME] * mobility;
+        int phase = phase(position);
+        return (midgame * phase + endgame * (MAX_PHASE - phase)) / MAX_PHASE;
+    }
+
+    @Override
+    public int[][] pieceSquares() {
+        return table;
+    }
+
+    /**
+     * How far from the endgame {@code position} is, from 0 with only kings and pawns left to {@link #MAX_PHASE}.
+     */
+    static int phase(Position position) {
+        int phase = 0;
+        for (int type = 0; type < 6; type++) {
+            phase += PHASE[type] * Long.bitCount(position.pieces[type] | position.pieces[type + 6]);
+        }
+        return Math.min(phase, MAX_PHASE);
+    }
+
+    static int pack(int midgame, int endgame) {
+        return (endgame << 16) + midgame;
+    }
+
+    static int midgame(int packed) {
+        return (short) packed;
+    }
+
+    static int endgame(int packed) {
+        return (packed + 0x8000) >> 16;
+    }
+
+    /**
+     * The weights of a parameter file. Square weights are indexed as the board is drawn from white's side, a8 first.
+     */
+    static final class Weights {
+
+        // indexed by stage and piece type
+        final int[][] values = new int[2][6];
+        // indexed by stage, piece type and index
+        final int[][][] squares = new int[2][6][64];
+        // indexed by stage
+        final int[] mobility = new int[2];
+
+        /**
+         * Where the weight of {@code piece} on {@code sq} is in its table: black's squares are mirrored.
+         */
+        static int index(int piece, int sq) {
+            return Position.colorOf(piece) == Position.WHITE ? sq ^ 56 : sq;
+        }
+
+        static Weights read(Config config) {
+            Weights weights = new Weights();
+            read(config, "mobility", 2, weights.mobility);
+            for (int type = 0; type < 6; type++) {
+                int[] value = new int[2];
+                read(config, NAMES[type] + ".value", 2, value);
+                weights.values[MIDGAME][type] = value[MIDGAME];
+                weights.values[ENDGAME][type] = value[ENDGAME];
+                read(config, NAMES[type] + ".midgame", 64, weights.squares[MIDGAME][type]);
+                read(config, NAMES[type] + ".endgame", 64, weights.squares[ENDGAME][type]);
+            }
+            return weights;
+        }
+
+        private static void read(Config config, String path, int size, int[] into) {
+            List<Integer> list = config.getIntList(path);
+            if (list.size() != size) {
+                throw new ConfigException.BadValue(config.origin(), path, "must have " + size + " weights");
+            }
+            for (int i = 0; i < size; i++) {
+                into[i] = list.get(i);
+            }
+        }
+
+        /**
+         * Appends these weights to {@code out} as a parameter file, under the comment {@code header}.
+         */
+        void write(StringBuilder out, String header) {
+            for (String line : header.split("\n")) {
+                out.append(line.isEmpty() ? "#" : "# ").append(line).append('\n');
+            }
+            out.append("\nmobility = [").append(mobility[MIDGAME]).append(", ").append(mobility[ENDGAME])
+                    .append("]\n");
+            // in the usual order, from pawn up
+            for (int type : new int[]{Position.PAWN, Position.KNIGHT, Position.BISHOP, Position.ROOK,
+                    Position.QUEEN, Position.KING}) {
+                out.append('\n').append(NAMES[type]).append(" {\n    value = [").append(values[MIDGAME][type])
+                        .append(", ").append(values[ENDGAME][type]).append("]\n");
+                writeTable(out, "midgame", squares[MIDGAME][type]);
+                writeTable(out, "endgame", squares[ENDGAME][type]);
+                out.append("}\n");
+            }
+        }
+
+        private static void writeTable(StringBuilder out, String name, int[] table) {
+            out.append("    ").append(name).append(" = [\n");
+            for (int row = 0; row < 8; row++) {
+                out.append("       ");
+                for (int column = 0; column < 8; column++) {
+                    int index = row * 8 + column;
+                    out.append(String.format(Locale.ROOT, "%5d", table[index])).append(index < 63 ? "," : "");
+                }
+                out.append('\n');
+            }
+            out.append("    ]\n");
+        }
+    }
+}
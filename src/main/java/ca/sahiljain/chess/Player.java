@@ -6,4 +6,8 @@ public enum Player {
     public Player opposite() {
         return this == MAXIMIZER ? MINIMIZER : MAXIMIZER;
     }
+
+    int color() {
+        return this == MAXIMIZER ? Position.WHITE : Position.BLACK;
+    }
 }
@@ -0,0 +1,413 @@
+package ca.sahiljain.chess;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard representation of a {@link Board}: one set per piece (indexed by {@link Piece#ordinal()}),
+ * plus occupancy masks per color and for the whole board. Square a1 is 0 and h8 is 63.
+ * A square-indexed mailbox is kept alongside so make/unmake can find pieces without scanning the sets,
+ * and the Zobrist {@link #key} and {@link #pieceSquareScore} are updated incrementally with every change. The
+ * piece-square weights summed are {@link #MATERIAL} unless the position is a {@link #copy(int[][])} with others.
+ *
+ * Castling rights, the en passant square and the move counters of the FEN are kept too. The en passant square is
+ * only set when a pawn can capture onto it, so positions that differ in nothing else share a key.
+ *
+ * Moves played as moves of a game, with {@link #playMove}, leave the keys of the positions before them in
+ * {@link #history}, so a search can tell when a line repeats one of them.
+ */
+public final class Position {
+
+    static final int WHITE = 0;
+    static final int BLACK = 1;
+
+    static final int ROOK = 0;
+    static final int BISHOP = 1;
+    static final int KING = 2;
+    static final int QUEEN = 3;
+    static final int KNIGHT = 4;
+    static final int PAWN = 5;
+
+    static final int EMPTY = 12;
+
+    static final int WHITE_KINGSIDE = 1;
+    static final int WHITE_QUEENSIDE = 2;
+    static final int BLACK_KINGSIDE = 4;
+    static final int BLACK_QUEENSIDE = 8;
+
+    static final int NO_SQUARE = -1;
+
+    static final long[] NO_HISTORY = new long[0];
+    // a position 100 plies after the last capture or pawn move is drawn, so no older one matters
+    private static final int MAX_HISTORY = 100;
+
+    // castling rights that survive a move from or to each square
+    private static final int[] CASTLING_KEPT = new int[64];
+
+    static {
+        Arrays.fill(CASTLING_KEPT, 15);
+        CASTLING_KEPT[0] = ~WHITE_QUEENSIDE & 15;
+        CASTLING_KEPT[4] = ~(WHITE_KINGSIDE | WHITE_QUEENSIDE) & 15;
+        CASTLING_KEPT[7] = ~WHITE_KINGSIDE & 15;
+        CASTLING_KEPT[56] = ~BLACK_QUEENSIDE & 15;
+        CASTLING_KEPT[60] = ~(BLACK_KINGSIDE | BLACK_QUEENSIDE) & 15;
+        CASTLING_KEPT[63] = ~BLACK_KINGSIDE & 15;
+    }
+
+    private static final Piece[] PIECES = Piece.values();
+
+    /**
+     * Plain piece values by piece and square, midgame in the low 16 bits and endgame in the high ones, white's
+     * positive and black's negative.
+     */
+    static final int[][] MATERIAL = new int[12][64];
+
+    static {
+        // indexed by piece type
+        int[] values = {500, 330, 0, 900, 320, 100};
+        for (int piece = 0; piece < 12; piece++) {
+            int packed = (values[typeOf(piece)] << 16) + values[typeOf(piece)];
+            Arrays.fill(MATERIAL[piece], colorOf(piece) == WHITE ? packed : -packed);
+        }
+    }
+
+    final long[] pieces = new long[12];
+    final long[] colors = new long[2];
+    final int[] squares = new int[64];
+    long occupied;
+    long key;
+    // the sum of pieceSquares over the pieces on the board
+    int pieceSquareScore;
+    int[][] pieceSquares = MATERIAL;
+    int sideToMove = WHITE;
+    int castling;
+    int enPassant = NO_SQUARE;
+    int halfmoveClock;
+    int fullmoveNumber = 1;
+    // keys of the game's positions before this one, back to the last capture or pawn move, oldest first
+    long[] history = NO_HISTORY;
+
+    Position() {
+        Arrays.fill(squares, EMPTY);
+    }
+
+    public Position(Board board) {
+        this();
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                Piece piece = board.arr[i][j];
+                if (piece != null && piece != Piece.EMPTY) {
+                    put(piece.ordinal(), square(i, j));
+                }
+            }
+        }
+        setState(board.sideToMove, board.castling, board.enPassant, board.halfmoveClock, board.fullmoveNumber);
+    }
+
+    /**
+     * Sets the FEN fields after the piece placement, once the pieces are in place. Castling rights the kings and
+     * rooks no longer allow are dropped, and so is an en passant square no pawn can capture onto.
+     */
+    void setState(int sideToMove, int castling, int enPassant, int halfmoveClock, int fullmoveNumber) {
+        setSideToMove(sideToMove);
+        setCastling(castling & possibleCastling());
+        int ep = enPassant;
+        if (ep != NO_SQUARE && (pieces[piece(sideToMove ^ 1, PAWN)] & 1L << (ep + (sideToMove == WHITE ? -8 : 8))) != 0
+                && (Attacks.PAWN[sideToMove ^ 1][ep] & pieces[piece(sideToMove, PAWN)]) != 0) {
+            this.enPassant = ep;
+            key ^= Zobrist.EN_PASSANT[ep & 7];
+        }
+        this.halfmoveClock = Math.min(halfmoveClock, 0xFFFF);
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    public Board toBoard() {
+        Board board = new Board();
+        for (int sq = 0; sq < 64; sq++) {
+            board.arr[row(sq)][column(sq)] = PIECES[pieceAt(sq)];
+        }
+        board.sideToMove = sideToMove;
+        board.castling = castling;
+        board.enPassant = enPassant;
+        board.halfmoveClock = halfmoveClock;
+        board.fullmoveNumber = fullmoveNumber;
+        return board;
+    }
+
+    Position copy() {
+        return copy(pieceSquares);
+    }
+
+    /**
+     * A copy of this position that sums {@code pieceSquares} into its {@link #pieceSquareScore}.
+     */
+    Position copy(int[][] pieceSquares) {
+        Position copy = new Position();
+        System.arraycopy(pieces, 0, copy.pieces, 0, 12);
+        copy.colors[WHITE] = colors[WHITE];
+        copy.colors[BLACK] = colors[BLACK];
+        System.arraycopy(squares, 0, copy.squares, 0, 64);
+        copy.occupied = occupied;
+        copy.key = key;
+        copy.pieceSquares = pieceSquares;
+        copy.pieceSquareScore = pieceSquares == this.pieceSquares ? pieceSquareScore : sum(pieceSquares);
+        copy.sideToMove = sideToMove;
+        copy.castling = castling;
+        copy.enPassant = enPassant;
+        copy.halfmoveClock = halfmoveClock;
+        copy.fullmoveNumber = fullmoveNumber;
+        copy.history = history;
+        return copy;
+    }
+
+    static int piece(int color, int type) {
+        return color * 6 + type;
+    }
+
+    static int colorOf(int piece) {
+        return piece < 6 ? WHITE : BLACK;
+    }
+
+    static int typeOf(int piece) {
+        return piece % 6;
+    }
+
+    static int square(int row, int column) {
+        return (7 - row) * 8 + column;
+    }
+
+    static int row(int sq) {
+        return 7 - (sq >>> 3);
+    }
+
+    static int column(int sq) {
+        return sq & 7;
+    }
+
+    /**
+     * Gives the move to {@code color}. Changing sides drops the en passant square, which only the other side
+     * could use.
+     */
+    void setSideToMove(int color) {
+        if (color != sideToMove) {
+            sideToMove = color;
+            key ^= Zobrist.SIDE;
+            clearEnPassant();
+        }
+    }
+
+    private void setCastling(int rights) {
+        key ^= Zobrist.CASTLING[castling] ^ Zobrist.CASTLING[rights];
+        castling = rights;
+    }
+
+    private void clearEnPassant() {
+        if (enPassant != NO_SQUARE) {
+            key ^= Zobrist.EN_PASSANT[enPassant & 7];
+            enPassant = NO_SQUARE;
+        }
+    }
+
+    /**
+     * Castling rights the kings and rooks on their starting squares still allow.
+     */
+    private int possibleCastling() {
+        int rights = 0;
+        if (squares[4] == piece(WHITE, KING)) {
+            rights |= (squares[7] == piece(WHITE, ROOK) ? WHITE_KINGSIDE : 0)
+                    | (squares[0] == piece(WHITE, ROOK) ? WHITE_QUEENSIDE : 0);
+        }
+        if (squares[60] == piece(BLACK, KING)) {
+            rights |= (squares[63] == piece(BLACK, ROOK) ? BLACK_KINGSIDE : 0)
+                    | (squares[56] == piece(BLACK, ROOK) ? BLACK_QUEENSIDE : 0);
+        }
+        return rights;
+    }
+
+    long pieces(int color, int type) {
+        return pieces[piece(color, type)];
+    }
+
+    int pieceAt(int sq) {
+        return squares[sq];
+    }
+
+    /**
+     * The sum of {@code table} over the pieces on the board.
+     */
+    int sum(int[][] table) {
+        int sum = 0;
+        for (long bits = occupied; bits != 0; bits &= bits - 1) {
+            int sq = Long.numberOfTrailingZeros(bits);
+            sum += table[squares[sq]][sq];
+        }
+        return sum;
+    }
+
+    void put(int piece, int sq) {
+        long bit = 1L << sq;
+        pieces[piece] |= bit;
+        colors[colorOf(piece)] |= bit;
+        occupied |= bit;
+        squares[sq] = piece;
+        key ^= Zobrist.PIECES[piece][sq];
+        pieceSquareScore += pieceSquares[piece][sq];
+    }
+
+    void remove(int piece, int sq) {
+        long bit = ~(1L << sq);
+        pieces[piece] &= bit;
+        colors[colorOf(piece)] &= bit;
+        occupied &= bit;
+        squares[sq] = EMPTY;
+        key ^= Zobrist.PIECES[piece][sq];
+        pieceSquareScore -= pieceSquares[piece][sq];
+    }
+
+    /**
+     * Plays {@code move} in place and returns the token {@link #unmakeMove} needs to take it back: the captured
+     * piece in the low 4 bits, then the castling rights, en passant square and halfmove clock from before the move.
+     */
+    int makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flag = Move.flag(move);
+        int piece = squares[from];
+        int color = colorOf(piece);
+        int undo = castling << 4 | (enPassant + 1) << 8 | halfmoveClock << 15;
+        int captured = EMPTY;
+        clearEnPassant();
+        if (flag == Move.EN_PASSANT) {
+            int sq = to + (color == WHITE ? -8 : 8);
+            captured = squares[sq];
+            remove(captured, sq);
+        } else if (Move.isCapture(move)) {
+            captured = squares[to];
+            remove(captured, to);
+        }
+        remove(piece, from);
+        put(Move.isPromotion(move) ? piece(color, Move.promotionType(move)) : piece, to);
+        if (flag == Move.KING_CASTLE) {
+            remove(piece(color, ROOK), to + 1);
+            put(piece(color, ROOK), to - 1);
+        } else if (flag == Move.QUEEN_CASTLE) {
+            remove(piece(color, ROOK), to - 2);
+            put(piece(color, ROOK), to + 1);
+        }
+        int rights = castling & CASTLING_KEPT[from] & CASTLING_KEPT[to];
+        if (rights != castling) {
+            setCastling(rights);
+        }
+        if (flag == Move.DOUBLE_PUSH) {
+            int sq = (from + to) >>> 1;
+            if ((Attacks.PAWN[color][sq] & pieces[piece(color ^ 1, PAWN)]) != 0) {
+                enPassant = sq;
+                key ^= Zobrist.EN_PASSANT[sq & 7];
+            }
+        }
+        halfmoveClock = typeOf(piece) == PAWN || captured != EMPTY ? 0 : Math.min(halfmoveClock + 1, 0xFFFF);
+        if (color == BLACK) {
+            fullmoveNumber++;
+        }
+        sideToMove ^= 1;
+        key ^= Zobrist.SIDE;
+        return undo | captured;
+    }
+
+    void unmakeMove(int move, int undo) {
+        sideToMove ^= 1;
+        key ^= Zobrist.SIDE;
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flag = Move.flag(move);
+        int piece = squares[to];
+        int color = colorOf(piece);
+        if (color == BLACK) {
+            fullmoveNumber--;
+        }
+        if (flag == Move.KING_CASTLE) {
+            remove(piece(color, ROOK), to - 1);
+            put(piece(color, ROOK), to + 1);
+        } else if (flag == Move.QUEEN_CASTLE) {
+            remove(piece(color, ROOK), to + 1);
+            put(piece(color, ROOK), to - 2);
+        }
+        remove(piece, to);
+        put(Move.isPromotion(move) ? piece(color, PAWN) : piece, from);
+        int captured = undo & 0xF;
+        if (captured != EMPTY) {
+            put(captured, flag == Move.EN_PASSANT ? to + (color == WHITE ? -8 : 8) : to);
+        }
+        setCastling((undo >>> 4) & 0xF);
+        clearEnPassant();
+        enPassant = ((undo >>> 8) & 0x7F) - 1;
+        if (enPassant != NO_SQUARE) {
+            key ^= Zobrist.EN_PASSANT[enPassant & 7];
+        }
+        halfmoveClock = undo >>> 15;
+    }
+
+    /**
+     * Passes the move to the other side, returning the token {@link #unmakeNullMove} needs to take it back.
+     * The halfmove clock starts again, so no position before the pass counts as a repetition after it.
+     */
+    int makeNullMove() {
+        int undo = enPassant + 1 | halfmoveClock << 8;
+        clearEnPassant();
+        halfmoveClock = 0;
+        sideToMove ^= 1;
+        key ^= Zobrist.SIDE;
+        return undo;
+    }
+
+    void unmakeNullMove(int undo) {
+        sideToMove ^= 1;
+        key ^= Zobrist.SIDE;
+        halfmoveClock = undo >>> 8;
+        enPassant = (undo & 0xFF) - 1;
+        if (enPassant != NO_SQUARE) {
+            key ^= Zobrist.EN_PASSANT[enPassant & 7];
+        }
+    }
+
+    /**
+     * Plays {@code move} as a move of the game rather than of a search, adding the position before it to
+     * {@link #history}. A capture or pawn move clears the history, since no earlier position can come back.
+     */
+    void playMove(int move) {
+        long before = key;
+        makeMove(move);
+        if (halfmoveClock == 0) {
+            history = NO_HISTORY;
+        } else {
+            int kept = Math.min(history.length, Math.min(halfmoveClock, MAX_HISTORY) - 1);
+            long[] longer = new long[kept + 1];
+            System.arraycopy(history, history.length - kept, longer, 0, kept);
+            longer[kept] = before;
+            history = longer;
+        }
+    }
+
+    boolean hasKing(int color) {
+        return pieces[piece(color, KING)] != 0;
+    }
+
+    /**
+     * Whether the other side attacks the king of {@code color}, so could capture it if it were to move.
+     */
+    boolean inCheck(int color) {
+        long king = pieces[piece(color, KING)];
+        return king != 0 && isAttacked(Long.numberOfTrailingZeros(king), color ^ 1);
+    }
+
+    /**
+     * Whether any piece of {@code color} attacks {@code sq}.
+     */
+    boolean isAttacked(int sq, int color) {
+        long queens = pieces[piece(color, QUEEN)];
+        return (Attacks.PAWN[color ^ 1][sq] & pieces[piece(color, PAWN)]) != 0
+                || (Attacks.KNIGHT[sq] & pieces[piece(color, KNIGHT)]) != 0
+                || (Attacks.KING[sq] & pieces[piece(color, KING)]) != 0
+                || (Attacks.bishop(sq, occupied) & (pieces[piece(color, BISHOP)] | queens)) != 0
+                || (Attacks.rook(sq, occupied) & (pieces[piece(color, ROOK)] | queens)) != 0;
+    }
+}
@@ -0,0 +1,65 @@
+package ca.sahiljain.chess;
+
+import java.util.Locale;
+
+/**
+ * What one request cost: the searches it ran and the counters they added up to, for its log line. Searches are
+ * also added to the service totals in {@link Metrics} as they finish, including those that outlive the request.
+ * A batch finishes its searches on several threads, so recording is synchronized.
+ */
+final class RequestMetrics {
+
+    /**
+     * Records nothing, for work done outside any request.
+     */
+    static final RequestMetrics NONE = new RequestMetrics(null, null);
+
+    final Metrics metrics;
+    final Metrics.RouteMetrics route;
+    final long startNanos = System.nanoTime();
+    private final SearchStats stats = new SearchStats();
+    private int searches;
+    private int maxDepth;
+    private int bookMoves;
+    private int cacheHits;
+
+    RequestMetrics(Metrics metrics, Metrics.RouteMetrics route) {
+        this.metrics = metrics;
+        this.route = route;
+    }
+
+    synchronized void searched(SearchResult result) {
+        if (metrics == null) {
+            return;
+        }
+        metrics.searched(route, result);
+        stats.add(result.stats);
+        searches++;
+        maxDepth = Math.max(maxDepth, result.depth);
+    }
+
+    synchronized void book() {
+        if (metrics == null) {
+            return;
+        }
+        metrics.book();
+        bookMoves++;
+    }
+
+    synchronized void cached() {
+        if (metrics == null) {
+            return;
+        }
+        metrics.cached();
+        cacheHits++;
+    }
+
+    synchronized String summary(long micros) {
+        return String.format(Locale.ROOT,
+                "searches=%d depth=%d nodes=%d nps=%d cutoffs=%d tableHitRatio=%.3f tablebaseHits=%d evaluations=%d "
+                        + "book=%d cache=%d",
+                searches, maxDepth, stats.nodes, stats.nodes * 1_000_000 / Math.max(1, micros), stats.cutoffs,
+                stats.tableProbes == 0 ? 0.0 : (double) stats.tableHits / stats.tableProbes, stats.tablebaseHits,
+                stats.evaluations, bookMoves, cacheHits);
+    }
+}
@@ -0,0 +1,81 @@
+package ca.sahiljain.chess;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of search results in front of {@link ChessStatic#search}. Entries are keyed by the Zobrist key of
+ * the position to move from, so FENs that differ only in counters or formatting share one. Eviction is Caffeine's
+ * W-TinyLFU, weighted by an estimate of each entry's heap size, plus a time to live.
+ *
+ * A result only answers a request that needs no more depth than it was searched to. A deeper result replaces a
+ * shallower one, never the other way round.
+ */
+final class ResultCache {
+
+    // cache node, boxed key and result object; the principal variation is counted separately
+    private static final int ENTRY_BYTES = 128;
+
+    private final Cache<Long, SearchResult> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ResultCache(int sizeMb, long ttlMinutes) {
+        cache = Caffeine.newBuilder()
+                .maximumWeight((long) sizeMb << 20)
+                .weigher((Long key, SearchResult result) -> ENTRY_BYTES + 4 * result.pv.length)
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * The cached result for {@code position} if it was searched at least {@code depth} plies, otherwise null.
+     * Results are keyed by Zobrist key alone, so one whose move can't be played in {@code position} came from
+     * another position with the same key and is a miss.
+     */
+    SearchResult get(Position position, int depth) {
+        SearchResult result = cache.getIfPresent(position.key);
+        if (result != null && result.depth >= depth && MoveGenerator.isMove(position, result.move)) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(Position position, SearchResult result) {
+        cache.asMap().merge(position.key, result, (cached, fresh) -> fresh.depth >= cached.depth ? fresh : cached);
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    double hitRatio() {
+        long total = hits() + misses();
+        return total == 0 ? 0 : (double) hits() / total;
+    }
+
+    long entries() {
+        return cache.estimatedSize();
+    }
+
+    long evictions() {
+        return cache.stats().evictionCount();
+    }
+
+    /**
+     * Estimated heap used by the entries, by the same measure the size limit is enforced in.
+     */
+    long bytes() {
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+}
@@ -0,0 +1,526 @@
+package ca.sahiljain.chess;
+
+/**
+ * Alpha-beta search that plays and takes back moves on a single {@link Position}: the one it is given, or a copy
+ * that sums the {@link Evaluator#pieceSquares} of its evaluator.
+ * All buffers are allocated up front, so searching a node allocates nothing.
+ * A stopped {@link SearchControl} unwinds the search with {@link SearchStoppedException}, leaving the position
+ * as it was before {@link #searchRoot}.
+ *
+ * Ordering carries over between iterations: the previous principal variation is searched first, then the
+ * transposition table move, captures by MVV-LVA, two killer moves per ply and quiet moves by history score.
+ *
+ * Once few enough pieces are left for the {@link Tablebase}, nodes take their exact value from it. A position that
+ * repeats one earlier on the line or in the game's {@link Position#history}, or that the fifty-move rule draws,
+ * scores as a draw.
+ *
+ * Each iteration starts with an aspiration window around the previous iteration's score, widened and searched again
+ * when the score falls outside it. Below the first move of a node, moves get a zero-width window and are searched
+ * again with the full window only if they beat alpha (principal variation search).
+ *
+ * The search is selective as far as {@link SearchOptions} allow: a quiescence search over captures and promotions
+ * at the horizon, null-move pruning, late-move reductions and check extensions.
+ */
+final class Search {
+
+    static final int INFINITY = 1_000_000;
+    static final int WIN = 900_000;
+    static final int MAX_PLY = 128;
+
+    // scores beyond this are wins or losses at a known distance, from the search or from a tablebase
+    static final int WIN_BOUND = WIN - MAX_PLY - 256;
+
+    private final Position position;
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+    private final SearchOptions options;
+    private SearchControl control;
+    private final int[] moves = new int[MAX_PLY * MoveGenerator.MAX_MOVES];
+    private final int[] scores = new int[MAX_PLY * MoveGenerator.MAX_MOVES];
+
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    private final int[] previousPv = new int[MAX_PLY];
+    private int previousPvLength;
+    private boolean followPv;
+
+    // keys of the game before the root and then of each position on the line being searched, by history length + ply
+    private final long[] keys;
+    private final int historyLength;
+
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[12][64];
+
+    private static final int PV_SCORE = 3_000_000;
+    private static final int HASH_SCORE = 2_000_000;
+    private static final int CAPTURE_SCORE = 1_000_000;
+    private static final int KILLER_SCORE = 900_000;
+    private static final int HISTORY_LIMIT = 800_000;
+
+    private static final int ASPIRATION_MIN_DEPTH = 5;
+    private static final int ASPIRATION_WINDOW = 25;
+
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    private static final int LMR_MIN_DEPTH = 3;
+    private static final int LMR_MIN_MOVES = 3;
+
+    // indexed by piece type: rook, bishop, king, queen, knight, pawn
+    private static final int[] VICTIM_ORDER = {4, 3, 6, 5, 2, 1};
+
+    private int score;
+    private int rootScore;
+    private final SearchStats stats = new SearchStats();
+    private long nodeLimit = Long.MAX_VALUE;
+
+    Search(Position position, TranspositionTable table, Tablebase tablebase, SearchOptions options,
+           SearchControl control) {
+        int[][] pieceSquares = options.evaluator.pieceSquares();
+        this.position = position.pieceSquares == pieceSquares ? position : position.copy(pieceSquares);
+        this.table = table;
+        this.tablebase = tablebase;
+        this.options = options;
+        this.control = control;
+        historyLength = position.history.length;
+        keys = new long[historyLength + MAX_PLY + 1];
+        System.arraycopy(position.history, 0, keys, 0, historyLength);
+    }
+
+    /**
+     * Searches the position to {@code depth} plies and returns the best move for the side to move,
+     * or {@link Move#NONE} if it has none.
+     */
+    int searchRoot(int depth) {
+        int delta = ASPIRATION_WINDOW;
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+        if (depth >= ASPIRATION_MIN_DEPTH && Math.abs(score) < WIN_BOUND) {
+            alpha = score - delta;
+            beta = score + delta;
+        }
+        int bestMove;
+        int value;
+        while (true) {
+            bestMove = searchRoot(depth, alpha, beta);
+            value = rootScore;
+            if (value <= alpha && alpha > -INFINITY) {
+                alpha = Math.max(value - delta, -INFINITY);
+            } else if (value >= beta && beta < INFINITY) {
+                beta = Math.min(value + delta, INFINITY);
+            } else {
+                break;
+            }
+            delta *= 2;
+        }
+        score = value;
+        if (bestMove != Move.NONE) {
+            table.store(position.key, bestMove, toTable(value, 0), depth, TranspositionTable.EXACT);
+        }
+        previousPvLength = pvLength[0];
+        System.arraycopy(pv[0], 0, previousPv, 0, previousPvLength);
+        return bestMove;
+    }
+
+    /**
+     * One pass over the root moves with the window {@code alpha}..{@code beta}. Returns the best move and leaves
+     * its score in {@link #rootScore}; a score outside the window is only a bound.
+     */
+    private int searchRoot(int depth, int alpha, int beta) {
+        keys[historyLength] = position.key;
+        int color = position.sideToMove;
+        int end = MoveGenerator.generateMoves(position, color, moves, 0);
+        long entry = table.probe(position.key);
+        int pvMove = previousPvLength > 0 ? previousPv[0] : Move.NONE;
+        scoreMoves(0, end, 0, pvMove, entry != 0 ? TranspositionTable.move(entry) : Move.NONE);
+        followPv = previousPvLength > 0;
+        pvLength[0] = 0;
+        int best = -INFINITY;
+        int bestMove = Move.NONE;
+        for (int i = 0; i < end; i++) {
+            int move = nextMove(i, end);
+            if (move != pvMove) {
+                followPv = false;
+            }
+            int undo = position.makeMove(move);
+            int value;
+            try {
+                int childDepth = depth - 1 + extension();
+                if (i == 0) {
+                    value = -search(childDepth, -beta, -alpha, 1, true);
+                } else {
+                    value = -search(childDepth, -alpha - 1, -alpha, 1, true);
+                    if (value > alpha && value < beta) {
+                        value = -search(childDepth, -beta, -alpha, 1, true);
+                    }
+                }
+            } finally {
+                position.unmakeMove(move, undo);
+            }
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (value > alpha) {
+                    alpha = value;
+                    updatePv(0, move);
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        rootScore = best;
+        return bestMove;
+    }
+
+    /**
+     * Principal variation of the last completed {@link #searchRoot} call; its length is {@link #pvLength()}.
+     */
+    int[] pv() {
+        return previousPv;
+    }
+
+    int pvLength() {
+        return previousPvLength;
+    }
+
+    /**
+     * Score of the last {@link #searchRoot} call, from the point of view of the side to move.
+     */
+    int score() {
+        return score;
+    }
+
+    /**
+     * Nodes visited by all {@link #searchRoot} calls so far.
+     */
+    long nodes() {
+        return stats.nodes;
+    }
+
+    /**
+     * Counters of all {@link #searchRoot} calls so far; only to be read by the thread running the search, or after
+     * it.
+     */
+    SearchStats stats() {
+        return stats;
+    }
+
+    void setControl(SearchControl control) {
+        this.control = control;
+    }
+
+    /**
+     * Makes any search that would visit more than {@code nodeLimit} nodes in total stop its control.
+     */
+    void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    private int search(int depth, int alpha, int beta, int ply, boolean nullAllowed) {
+        countNode();
+        pvLength[ply] = 0;
+        int color = position.sideToMove;
+        if (!position.hasKing(color)) {
+            return -WIN + ply;
+        }
+        keys[historyLength + ply] = position.key;
+        if (isDraw(ply)) {
+            return 0;
+        }
+        if (Long.bitCount(position.occupied) <= tablebase.maxPieces()) {
+            int stored = tablebase.probe(position);
+            if (stored != Tablebase.MISSING) {
+                stats.tablebaseHits++;
+                return Tablebase.score(stored, ply);
+            }
+        }
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            return options.quiescence ? quiesce(alpha, beta, ply) : evaluate(color);
+        }
+
+        long entry = table.probe(position.key);
+        stats.tableProbes++;
+        int hashMove = Move.NONE;
+        if (entry != 0) {
+            stats.tableHits++;
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int value = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || bound == TranspositionTable.LOWER && value >= beta
+                        || bound == TranspositionTable.UPPER && value <= alpha) {
+                    return value;
+                }
+            }
+        }
+
+        int pvMove = Move.NONE;
+        if (followPv) {
+            if (ply < previousPvLength) {
+                pvMove = previousPv[ply];
+            } else {
+                followPv = false;
+            }
+        }
+
+        boolean inCheck = position.inCheck(color);
+        if (options.nullMove && nullAllowed && pvMove == Move.NONE && depth >= NULL_MOVE_MIN_DEPTH && !inCheck
+                && beta < WIN_BOUND && hasPieces(color) && evaluate(color) >= beta) {
+            int reduction = depth > 6 ? 3 : 2;
+            int undo = position.makeNullMove();
+            int value;
+            try {
+                value = -search(depth - 1 - reduction, -beta, -beta + 1, ply + 1, false);
+            } finally {
+                position.unmakeNullMove(undo);
+            }
+            if (value >= beta) {
+                stats.cutoffs++;
+                return value >= WIN_BOUND ? beta : value;
+            }
+        }
+
+        int originalAlpha = alpha;
+        int start = ply * MoveGenerator.MAX_MOVES;
+        int end = MoveGenerator.generateMoves(position, color, moves, start);
+        scoreMoves(start, end, ply, pvMove, hashMove);
+        int best = -WIN + ply;
+        int bestMove = Move.NONE;
+        for (int i = start; i < end; i++) {
+            int move = nextMove(i, end);
+            if (move != pvMove) {
+                followPv = false;
+            }
+            boolean quiet = !Move.isCapture(move) && !Move.isPromotion(move)
+                    && move != killers[ply][0] && move != killers[ply][1];
+            int undo = position.makeMove(move);
+            int value;
+            try {
+                int extension = extension();
+                int childDepth = depth - 1 + extension;
+                if (i == start) {
+                    value = -search(childDepth, -beta, -alpha, ply + 1, true);
+                } else {
+                    int reduction = 0;
+                    if (options.lateMoveReductions && quiet && extension == 0 && !inCheck && depth >= LMR_MIN_DEPTH
+                            && i - start >= LMR_MIN_MOVES) {
+                        reduction = i - start >= 2 * LMR_MIN_MOVES + 2 && depth >= 6 ? 2 : 1;
+                    }
+                    value = -search(childDepth - reduction, -alpha - 1, -alpha, ply + 1, true);
+                    if (reduction > 0 && value > alpha) {
+                        value = -search(childDepth, -alpha - 1, -alpha, ply + 1, true);
+                    }
+                    if (value > alpha && value < beta) {
+                        value = -search(childDepth, -beta, -alpha, ply + 1, true);
+                    }
+                }
+            } finally {
+                position.unmakeMove(move, undo);
+            }
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (value > alpha) {
+                    alpha = value;
+                    updatePv(ply, move);
+                    if (alpha >= beta) {
+                        stats.cutoffs++;
+                        if (!Move.isCapture(move)) {
+                            rememberQuiet(move, depth, ply);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = best >= beta ? TranspositionTable.LOWER
+                : best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        table.store(position.key, bestMove, toTable(best, ply), depth, bound);
+        return best;
+    }
+
+    /**
+     * Whether the position at {@code ply} is drawn by the fifty-move rule or repeats one before it. A single
+     * repetition is enough: a side that could force it once can force it again. Positions before the last capture
+     * or pawn move can't come back, so the search goes no further back than the halfmove clock.
+     */
+    private boolean isDraw(int ply) {
+        if (position.halfmoveClock >= 100) {
+            return true;
+        }
+        int index = historyLength + ply;
+        int oldest = Math.max(0, index - position.halfmoveClock);
+        for (int i = index - 4; i >= oldest; i -= 2) {
+            if (keys[i] == position.key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Searches only captures and promotions, letting the side to move stand pat on the static evaluation,
+     * so the horizon is never in the middle of an exchange.
+     */
+    private int quiesce(int alpha, int beta, int ply) {
+        countNode();
+        pvLength[ply] = 0;
+        int color = position.sideToMove;
+        if (!position.hasKing(color)) {
+            return -WIN + ply;
+        }
+        int best = evaluate(color);
+        if (best >= beta || ply >= MAX_PLY - 1) {
+            return best;
+        }
+        if (best > alpha) {
+            alpha = best;
+        }
+        int start = ply * MoveGenerator.MAX_MOVES;
+        int end = MoveGenerator.generateCaptures(position, color, moves, start);
+        scoreMoves(start, end, ply, Move.NONE, Move.NONE);
+        for (int i = start; i < end; i++) {
+            int move = nextMove(i, end);
+            if (Move.isUnderpromotion(move)) {
+                continue;
+            }
+            int undo = position.makeMove(move);
+            int value;
+            try {
+                value = -quiesce(-beta, -alpha, ply + 1);
+            } finally {
+                position.unmakeMove(move, undo);
+            }
+            if (value > best) {
+                best = value;
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta) {
+                        stats.cutoffs++;
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private void countNode() {
+        if (++stats.nodes > nodeLimit) {
+            control.stop();
+        }
+        if ((stats.nodes & (SearchControl.CHECK_INTERVAL - 1)) == 0 ? control.checkDeadline() : control.isStopped()) {
+            throw SearchStoppedException.INSTANCE;
+        }
+    }
+
+    /**
+     * Plies to add for the move just played: one if it attacks the king of the side now to move.
+     */
+    private int extension() {
+        return options.checkExtensions && position.inCheck(position.sideToMove) ? 1 : 0;
+    }
+
+    /**
+     * Whether {@code color} has anything besides king and pawns, so passing is unlikely to be its best move.
+     */
+    private boolean hasPieces(int color) {
+        return (position.colors[color] & ~position.pieces(color, Position.KING)
+                & ~position.pieces(color, Position.PAWN)) != 0;
+    }
+
+    private void scoreMoves(int start, int end, int ply, int pvMove, int hashMove) {
+        for (int i = start; i < end; i++) {
+            int move = moves[i];
+            int piece = position.pieceAt(Move.from(move));
+            if (move == pvMove) {
+                scores[i] = PV_SCORE;
+            } else if (move == hashMove) {
+                scores[i] = HASH_SCORE;
+            } else if (Move.isUnderpromotion(move)) {
+                scores[i] = -1;
+            } else if (Move.isCapture(move)) {
+                int victim = Move.flag(move) == Move.EN_PASSANT
+                        ? Position.PAWN : Position.typeOf(position.pieceAt(Move.to(move)));
+                scores[i] = CAPTURE_SCORE + VICTIM_ORDER[victim] * 8 - VICTIM_ORDER[Position.typeOf(piece)];
+            } else if (Move.isPromotion(move)) {
+                scores[i] = CAPTURE_SCORE;
+            } else if (move == killers[ply][0]) {
+                scores[i] = KILLER_SCORE;
+            } else if (move == killers[ply][1]) {
+                scores[i] = KILLER_SCORE - 1;
+            } else {
+                scores[i] = history[piece][Move.to(move)];
+            }
+        }
+    }
+
+    /**
+     * Swaps the best scored of the remaining moves into slot {@code i} and returns it.
+     */
+    private int nextMove(int i, int end) {
+        int best = i;
+        for (int j = i + 1; j < end; j++) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+        int move = moves[best];
+        if (best != i) {
+            int moveScore = scores[best];
+            moves[best] = moves[i];
+            scores[best] = scores[i];
+            moves[i] = move;
+            scores[i] = moveScore;
+        }
+        return move;
+    }
+
+    private void updatePv(int ply, int move) {
+        int[] line = pv[ply];
+        int[] child = pv[ply + 1];
+        int childLength = pvLength[ply + 1];
+        line[ply] = move;
+        System.arraycopy(child, ply + 1, line, ply + 1, childLength);
+        pvLength[ply] = childLength + 1;
+    }
+
+    private void rememberQuiet(int move, int depth, int ply) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] pieceHistory = history[position.pieceAt(Move.from(move))];
+        int to = Move.to(move);
+        pieceHistory[to] += depth * depth;
+        if (pieceHistory[to] > HISTORY_LIMIT) {
+            for (int[] row : history) {
+                for (int sq = 0; sq < 64; sq++) {
+                    row[sq] /= 2;
+                }
+            }
+        }
+    }
+
+    /**
+     * Win scores are stored relative to the node rather than the root, so they stay valid at any ply.
+     */
+    private static int toTable(int value, int ply) {
+        if (value > WIN_BOUND) return value + ply;
+        if (value < -WIN_BOUND) return value - ply;
+        return value;
+    }
+
+    private static int fromTable(int value, int ply) {
+        if (value > WIN_BOUND) return value - ply;
+        if (value < -WIN_BOUND) return value + ply;
+        return value;
+    }
+
+    private int evaluate(int color) {
+        stats.evaluations++;
+        int value = options.evaluator.evaluate(position);
+        return color == Position.WHITE ? value : -value;
+    }
+}
@@ -0,0 +1,44 @@
+package ca.sahiljain.chess;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stop signal shared by every thread working on one search. Searches poll it every
+ * {@link #CHECK_INTERVAL} nodes, and the first one to see the deadline pass stops them all.
+ */
+final class SearchControl {
+
+    static final int CHECK_INTERVAL = 1024;
+
+    private final long deadline;
+    private volatile boolean stopped;
+
+    /**
+     * @param timeLimit milliseconds from now until the search must stop
+     */
+    SearchControl(long timeLimit) {
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeLimit));
+    }
+
+    static SearchControl unlimited() {
+        return new SearchControl(TimeUnit.DAYS.toMillis(365));
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Stops the search if its deadline has passed, and returns whether it is stopped.
+     */
+    boolean checkDeadline() {
+        if (!stopped && System.nanoTime() - deadline >= 0) {
+            stopped = true;
+        }
+        return stopped;
+    }
+}
@@ -0,0 +1,47 @@
+package ca.sahiljain.chess;
+
+/**
+ * Limits for one search, in the spirit of the UCI {@code go} command. Times are in milliseconds; a move time of 0
+ * means the engine budgets from the clock, or up to {@link #maxTime} if no clock is given either.
+ */
+final class SearchLimits {
+
+    static final int MAX_DEPTH = 35;
+
+    long moveTime;
+    long maxTime;
+    int depth = MAX_DEPTH;
+    long nodes = Long.MAX_VALUE;
+    long whiteTime;
+    long blackTime;
+    long whiteIncrement;
+    long blackIncrement;
+    int movesToGo;
+    int threads = 1;
+    // shared by every copy; not changed per request
+    SearchOptions options = new SearchOptions();
+
+    SearchLimits copy() {
+        SearchLimits copy = new SearchLimits();
+        copy.moveTime = moveTime;
+        copy.maxTime = maxTime;
+        copy.depth = depth;
+        copy.nodes = nodes;
+        copy.whiteTime = whiteTime;
+        copy.blackTime = blackTime;
+        copy.whiteIncrement = whiteIncrement;
+        copy.blackIncrement = blackIncrement;
+        copy.movesToGo = movesToGo;
+        copy.threads = threads;
+        copy.options = options;
+        return copy;
+    }
+
+    long time(int color) {
+        return color == Position.WHITE ? whiteTime : blackTime;
+    }
+
+    long increment(int color) {
+        return color == Position.WHITE ? whiteIncrement : blackIncrement;
+    }
+}
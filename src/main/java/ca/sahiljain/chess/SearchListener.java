@@ -0,0 +1,28 @@
+package ca.sahiljain.chess;
+
+/**
+ * Follows a search from {@link ChessStatic#search} as it runs. Calls come from the thread that starts the search
+ * and then from the scheduler threads running its iterations, one at a time.
+ */
+interface SearchListener {
+
+    SearchListener NONE = new SearchListener() {
+        @Override
+        public void started(SearchControl control) {
+        }
+
+        @Override
+        public void iteration(SearchResult result, long elapsedMillis) {
+        }
+    };
+
+    /**
+     * Hands over the control shared by the search's threads. Stopping it ends the search as soon as it has a move.
+     */
+    void started(SearchControl control);
+
+    /**
+     * Reports each completed iteration of the main search, {@code elapsedMillis} after the search started.
+     */
+    void iteration(SearchResult result, long elapsedMillis);
+}
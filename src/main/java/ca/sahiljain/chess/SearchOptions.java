@@ -0,0 +1,19 @@
+package ca.sahiljain.chess;
+
+/**
+ * Which selective search techniques {@link Search} uses, and how it evaluates. All techniques are on unless the
+ * configuration turns them off.
+ */
+final class SearchOptions {
+
+    // captures and promotions are searched past the nominal depth until the position is quiet
+    boolean quiescence = true;
+    // a side that is still at or above beta after passing is not searched at full depth
+    boolean nullMove = true;
+    // quiet moves late in the ordering are searched a ply or two shallower, and again at full depth if they raise alpha
+    boolean lateMoveReductions = true;
+    // moves that attack the king are searched a ply deeper
+    boolean checkExtensions = true;
+    // scores the positions at the horizon
+    Evaluator evaluator = PieceSquareEvaluator.DEFAULT;
+}
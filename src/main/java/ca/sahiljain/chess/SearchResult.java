@@ -0,0 +1,36 @@
+package ca.sahiljain.chess;
+
+/**
+ * Outcome of one search: the move chosen and what it was based on. The score is from the point of view of the
+ * side to move, and the depth is that of the last completed iteration. The nodes and other counters are those of
+ * every thread of the search.
+ */
+final class SearchResult {
+
+    final int move;
+    final int score;
+    final int depth;
+    final long nodes;
+    final int[] pv;
+    final SearchStats stats;
+
+    SearchResult(int move, int score, int depth, int[] pv, SearchStats stats) {
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = stats.nodes;
+        this.pv = pv;
+        this.stats = stats;
+    }
+
+    /**
+     * The principal variation as a JSON array of UCI moves.
+     */
+    String pvJson() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < pv.length; i++) {
+            builder.append(i == 0 ? "\"" : ",\"").append(Move.toUci(pv[i])).append('"');
+        }
+        return builder.append(']').toString();
+    }
+}
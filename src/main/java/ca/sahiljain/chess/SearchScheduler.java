@@ -0,0 +1,83 @@
+package ca.sahiljain.chess;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service-wide pool that runs every search. Searches are submitted one iteration at a time, so concurrent
+ * requests take turns on the threads in FIFO order. When the queue is full, new work is rejected with a
+ * {@link RejectedExecutionException}, and the caller is expected to shed the request.
+ */
+final class SearchScheduler {
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    SearchScheduler(int threads, int queueSize) {
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize));
+    }
+
+    <T> Future<T> submit(final Callable<T> task) {
+        final long queuedAt = System.nanoTime();
+        try {
+            Future<T> future = executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    started.increment();
+                    waitNanos.add(System.nanoTime() - queuedAt);
+                    return task.call();
+                }
+            });
+            submitted.increment();
+            return future;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    int threads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    int active() {
+        return executor.getActiveCount();
+    }
+
+    int queued() {
+        return executor.getQueue().size();
+    }
+
+    long rejected() {
+        return rejected.sum();
+    }
+
+    long submitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * Mean time a task waited in the queue before a thread picked it up.
+     */
+    long averageWaitMillis() {
+        long count = started.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.sum() / count);
+    }
+
+    /**
+     * Seconds a shed client should wait before retrying: one search budget per queued task ahead of it per thread.
+     */
+    long retryAfterSeconds(long budgetMillis) {
+        long rounds = 1 + queued() / threads();
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(rounds * budgetMillis));
+    }
+}
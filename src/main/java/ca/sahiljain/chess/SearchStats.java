@@ -0,0 +1,31 @@
+package ca.sahiljain.chess;
+
+/**
+ * Work counters of a search. Each {@link Search} owns one and updates it without synchronization from the one thread
+ * running it; the counters of all threads of a search are added together when it ends.
+ */
+final class SearchStats {
+
+    long nodes;
+    // moves that failed high, in the main search or quiescence, plus null-move cutoffs
+    long cutoffs;
+    long tableProbes;
+    long tableHits;
+    long tablebaseHits;
+    long evaluations;
+
+    void add(SearchStats other) {
+        nodes += other.nodes;
+        cutoffs += other.cutoffs;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        tablebaseHits += other.tablebaseHits;
+        evaluations += other.evaluations;
+    }
+
+    SearchStats copy() {
+        SearchStats copy = new SearchStats();
+        copy.add(this);
+        return copy;
+    }
+}
@@ -0,0 +1,16 @@
+package ca.sahiljain.chess;
+
+/**
+ * Unwinds a search whose {@link SearchControl} was stopped. A single instance without a stack trace is reused,
+ * so stopping costs no allocation.
+ */
+final class SearchStoppedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    static final SearchStoppedException INSTANCE = new SearchStoppedException();
+
+    private SearchStoppedException() {
+        super("search stopped", null, false, false);
+    }
+}
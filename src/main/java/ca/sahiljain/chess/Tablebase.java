@@ -0,0 +1,310 @@
+package ca.sahiljain.chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Endgame tables of up to {@link #MAX_PIECES} pieces, memory-mapped from a directory of files written by
+ * {@link TablebaseGenerator}. They are solved under this engine's own rules, where a game ends when a king is
+ * captured, so they answer exactly the question the search asks.
+ *
+ * A table covers one material signature, named like {@code KRvKN}, white first. It stores one byte per position:
+ * 0 for a draw, otherwise one more than the number of plies until a king is captured with best play. An odd
+ * number of plies is a win for the side to move, an even number a loss. Positions are indexed by side to move,
+ * the white king on files a-d (the board is mirrored otherwise) and then every other piece's square in signature
+ * order, with identical pieces in ascending square order. A table with colors reversed answers for its mirror
+ * image, so only one of the two needs to exist.
+ */
+final class Tablebase {
+
+    static final int MAX_PIECES = 5;
+    static final int MISSING = -1;
+    static final String SUFFIX = ".tb";
+
+    // piece letters in signature order: king, queen, rook, bishop, knight, pawn
+    private static final String LETTERS = "KQRBNP";
+    private static final int[] LETTER_TYPES = {Position.KING, Position.QUEEN, Position.ROOK, Position.BISHOP,
+            Position.KNIGHT, Position.PAWN};
+
+    private final int[] keys;
+    private final Table[] tables;
+    private final int maxPieces;
+    private final int count;
+    private final LongAdder hits = new LongAdder();
+
+    private static final class Table {
+        final int[] slots;
+        final ByteBuffer values;
+
+        Table(int[] slots, ByteBuffer values) {
+            this.slots = slots;
+            this.values = values;
+        }
+    }
+
+    private Tablebase(List<Table> loaded) {
+        int capacity = Integer.highestOneBit(Math.max(1, loaded.size()) * 2) * 2;
+        keys = new int[capacity];
+        tables = new Table[capacity];
+        int pieces = 0;
+        for (Table table : loaded) {
+            int slot = materialKey(table.slots) & (capacity - 1);
+            while (tables[slot] != null) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            keys[slot] = materialKey(table.slots);
+            tables[slot] = table;
+            pieces = Math.max(pieces, table.slots.length);
+        }
+        maxPieces = pieces;
+        count = loaded.size();
+    }
+
+    static Tablebase empty() {
+        return new Tablebase(new ArrayList<Table>());
+    }
+
+    /**
+     * Maps every table in {@code directory} read-only.
+     *
+     * @throws IOException if a table can't be read or has the wrong size for its signature
+     */
+    static Tablebase open(Path directory) throws IOException {
+        List<Table> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int[] slots = slots(name.substring(0, name.length() - SUFFIX.length()));
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    if (channel.size() != size(slots.length)) {
+                        throw new IOException(file + " has the wrong size for its signature");
+                    }
+                    loaded.add(new Table(slots, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+                }
+            }
+        }
+        return new Tablebase(loaded);
+    }
+
+    /**
+     * The stored value of {@code position}, or {@link #MISSING} if no table covers it. Tables hold no positions
+     * with castling rights or an en passant capture.
+     */
+    int probe(Position position) {
+        if (Long.bitCount(position.occupied) > maxPieces || position.castling != 0
+                || position.enPassant != Position.NO_SQUARE
+                || !position.hasKing(Position.WHITE) || !position.hasKing(Position.BLACK)) {
+            return MISSING;
+        }
+        boolean flip = false;
+        Table table = find(materialKey(position, false));
+        if (table == null) {
+            flip = true;
+            table = find(materialKey(position, true));
+            if (table == null) {
+                return MISSING;
+            }
+        }
+        hits.increment();
+        return table.values.get(index(table.slots, position, flip)) & 0xFF;
+    }
+
+    /**
+     * The search score of a stored value for the side to move at {@code ply}.
+     */
+    static int score(int value, int ply) {
+        if (value == 0) {
+            return 0;
+        }
+        int plies = value - 1;
+        return (plies & 1) != 0 ? Search.WIN - ply - plies : -Search.WIN + ply + plies;
+    }
+
+    /**
+     * The move that keeps the best result from {@code root}, or null unless the root and every position after a
+     * move from it are in the tables.
+     */
+    SearchResult bestMove(Position root) {
+        if (probe(root) == MISSING) {
+            return null;
+        }
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int end = MoveGenerator.generateMoves(root, root.sideToMove, moves, 0);
+        int bestMove = Move.NONE;
+        int bestScore = -Search.INFINITY;
+        for (int i = 0; i < end; i++) {
+            int move = moves[i];
+            int value;
+            if (Move.isCapture(move) && Position.typeOf(root.pieceAt(Move.to(move))) == Position.KING) {
+                value = Search.WIN - 1;
+            } else {
+                int undo = root.makeMove(move);
+                int stored = probe(root);
+                root.unmakeMove(move, undo);
+                if (stored == MISSING) {
+                    return null;
+                }
+                value = -score(stored, 1);
+            }
+            if (value > bestScore) {
+                bestScore = value;
+                bestMove = move;
+            }
+        }
+        if (bestMove == Move.NONE) {
+            return null;
+        }
+        SearchStats stats = new SearchStats();
+        stats.tablebaseHits = 1;
+        return new SearchResult(bestMove, bestScore, SearchLimits.MAX_DEPTH, new int[]{bestMove}, stats);
+    }
+
+    /**
+     * Largest piece count of any loaded table; positions with more pieces are never probed.
+     */
+    int maxPieces() {
+        return maxPieces;
+    }
+
+    int tables() {
+        return count;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of positions in a table of {@code pieces} pieces, both sides to move.
+     */
+    static int size(int pieces) {
+        return 2 * 32 << (6 * (pieces - 1));
+    }
+
+    /**
+     * Index of {@code position} in a table with the given slots. With {@code flip}, the table is for the position
+     * with colors reversed and the board turned round.
+     */
+    static int index(int[] slots, Position position, boolean flip) {
+        long whiteKing = bitboard(position, slots[0], flip);
+        boolean mirror = (Long.numberOfTrailingZeros(whiteKing) & 7) >= 4;
+        int king = Long.numberOfTrailingZeros(mirror ? mirrorFiles(whiteKing) : whiteKing);
+        int side = flip ? position.sideToMove ^ 1 : position.sideToMove;
+        int index = side * 32 + (king >>> 3) * 4 + (king & 7);
+        long pieces = 0;
+        for (int i = 1; i < slots.length; i++) {
+            if (slots[i] != slots[i - 1]) {
+                pieces = bitboard(position, slots[i], flip);
+                if (mirror) {
+                    pieces = mirrorFiles(pieces);
+                }
+            }
+            index = index * 64 + Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+        }
+        return index;
+    }
+
+    /**
+     * Pieces of each slot of a signature such as {@code KRvKN}: white king, white pieces, black king, black pieces.
+     */
+    static int[] slots(String name) {
+        int split = name.indexOf('v');
+        if (split < 1 || name.charAt(0) != 'K' || split + 1 >= name.length() || name.charAt(split + 1) != 'K'
+                || name.length() - 1 > MAX_PIECES) {
+            throw new IllegalArgumentException("bad signature: " + name);
+        }
+        int[] slots = new int[name.length() - 1];
+        int slot = 0;
+        for (int i = 0; i < name.length(); i++) {
+            if (i == split) {
+                continue;
+            }
+            int letter = LETTERS.indexOf(name.charAt(i));
+            if (letter < 0 || letter == 0 && i != 0 && i != split + 1) {
+                throw new IllegalArgumentException("bad signature: " + name);
+            }
+            slots[slot++] = Position.piece(i < split ? Position.WHITE : Position.BLACK, LETTER_TYPES[letter]);
+        }
+        if (!name(slots).equals(name)) {
+            throw new IllegalArgumentException("pieces out of order: " + name + " should be " + name(slots));
+        }
+        return slots;
+    }
+
+    /**
+     * Signature of the given pieces, in canonical order whatever order they are given in.
+     */
+    static String name(int[] pieces) {
+        StringBuilder builder = new StringBuilder();
+        for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+            if (color == Position.BLACK) {
+                builder.append('v');
+            }
+            for (int letter = 0; letter < LETTERS.length(); letter++) {
+                for (int piece : pieces) {
+                    if (piece == Position.piece(color, LETTER_TYPES[letter])) {
+                        builder.append(LETTERS.charAt(letter));
+                    }
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private Table find(int key) {
+        int slot = key & (keys.length - 1);
+        while (tables[slot] != null) {
+            if (keys[slot] == key) {
+                return tables[slot];
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return null;
+    }
+
+    // three bits per piece count, kings left out
+    private static int materialKey(int[] slots) {
+        int key = 0;
+        for (int piece : slots) {
+            if (Position.typeOf(piece) != Position.KING) {
+                key += 1 << (3 * keyShift(piece));
+            }
+        }
+        return key;
+    }
+
+    private static int materialKey(Position position, boolean flip) {
+        int key = 0;
+        for (int piece = 0; piece < 12; piece++) {
+            if (Position.typeOf(piece) != Position.KING) {
+                int count = Long.bitCount(position.pieces[flip ? (piece + 6) % 12 : piece]);
+                key += count << (3 * keyShift(piece));
+            }
+        }
+        return key;
+    }
+
+    private static int keyShift(int piece) {
+        int type = Position.typeOf(piece);
+        return Position.colorOf(piece) * 5 + (type > Position.KING ? type - 1 : type);
+    }
+
+    private static long bitboard(Position position, int piece, boolean flip) {
+        return flip ? Long.reverseBytes(position.pieces[(piece + 6) % 12]) : position.pieces[piece];
+    }
+
+    private static long mirrorFiles(long bitboard) {
+        bitboard = ((bitboard >>> 1) & 0x5555555555555555L) | ((bitboard & 0x5555555555555555L) << 1);
+        bitboard = ((bitboard >>> 2) & 0x3333333333333333L) | ((bitboard & 0x3333333333333333L) << 2);
+        return ((bitboard >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((bitboard & 0x0F0F0F0F0F0F0F0FL) << 4);
+    }
+}
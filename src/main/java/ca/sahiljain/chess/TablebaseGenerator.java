@@ -0,0 +1,285 @@
+package ca.sahiljain.chess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Solves {@link Tablebase} files by retrograde analysis. Every position first looks at its captures and promotions,
+ * which lead into smaller tables that are already solved, and counts its other moves. Results then spread back one
+ * ply at a time by taking moves back: a predecessor of a loss is a win, and a position all of whose moves lead to
+ * wins for the opponent is a loss. Whatever is never reached is a draw.
+ *
+ * Tables a signature reaches by a capture or a promotion are built first when missing. Memory is four bytes per
+ * position: about 70 MB for four pieces and 4 GB for five.
+ *
+ * Usage: {@code TablebaseGenerator <directory> <signature>...}, for example {@code TablebaseGenerator tb KRvK KPvK}
+ */
+public final class TablebaseGenerator {
+
+    private final int[] slots;
+    private final Tablebase tablebase;
+    private final byte[] values;
+    // smallest distance plus one at which the position is known to be decided; 0 if none yet
+    private final byte[] pending;
+    // moves that stay inside this table and are not yet known to lose, plus one if some capture or promotion does not
+    private final byte[] counts;
+    // the longest win a capture or promotion hands the opponent
+    private final byte[] exitWins;
+    private final Position position = new Position();
+    private final int[] squares;
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    private boolean placed;
+    private int maxPending;
+
+    private TablebaseGenerator(int[] slots, Tablebase tablebase) {
+        this.slots = slots;
+        this.tablebase = tablebase;
+        int size = Tablebase.size(slots.length);
+        values = new byte[size];
+        pending = new byte[size];
+        counts = new byte[size];
+        exitWins = new byte[size];
+        squares = new int[slots.length];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: TablebaseGenerator <directory> <signature>...");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        for (int i = 1; i < args.length; i++) {
+            generate(directory, args[i]);
+        }
+    }
+
+    private static void generate(Path directory, String name) throws IOException {
+        int[] slots = Tablebase.slots(name);
+        if (Files.exists(directory.resolve(name + Tablebase.SUFFIX))
+                || Files.exists(directory.resolve(flipped(slots) + Tablebase.SUFFIX))) {
+            return;
+        }
+        for (String dependency : dependencies(slots)) {
+            generate(directory, dependency);
+        }
+        long start = System.currentTimeMillis();
+        TablebaseGenerator generator = new TablebaseGenerator(slots, Tablebase.open(directory));
+        generator.solve();
+        Path file = directory.resolve(name + Tablebase.SUFFIX);
+        Path partial = directory.resolve(name + Tablebase.SUFFIX + ".partial");
+        Files.write(partial, generator.values);
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println(name + ": longest " + (generator.maxPending - 1) + " plies, "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static String flipped(int[] slots) {
+        int[] pieces = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            pieces[i] = (slots[i] + 6) % 12;
+        }
+        return Tablebase.name(pieces);
+    }
+
+    private static Set<String> dependencies(int[] slots) {
+        Set<String> dependencies = new LinkedHashSet<>();
+        for (int i = 0; i < slots.length; i++) {
+            int type = Position.typeOf(slots[i]);
+            if (type == Position.KING) {
+                continue;
+            }
+            int[] captured = new int[slots.length - 1];
+            for (int j = 0, k = 0; j < slots.length; j++) {
+                if (j != i) {
+                    captured[k++] = slots[j];
+                }
+            }
+            dependencies.add(Tablebase.name(captured));
+            if (type == Position.PAWN) {
+                for (int promotion : new int[]{Position.QUEEN, Position.ROOK, Position.BISHOP, Position.KNIGHT}) {
+                    int[] promoted = slots.clone();
+                    promoted[i] = Position.piece(Position.colorOf(slots[i]), promotion);
+                    dependencies.add(Tablebase.name(promoted));
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    private void solve() {
+        for (int index = 0; index < values.length; index++) {
+            if (setUp(index)) {
+                classify(index);
+            }
+        }
+        for (int plies = 0; plies < maxPending; plies++) {
+            byte mark = (byte) (plies + 1);
+            for (int index = 0; index < values.length; index++) {
+                if (values[index] == 0 && pending[index] == mark) {
+                    values[index] = mark;
+                    propagate(index, plies);
+                }
+            }
+        }
+    }
+
+    private void classify(int index) {
+        int end = MoveGenerator.generateMoves(position, position.sideToMove, moves, 0);
+        int inside = 0;
+        boolean safe = false;
+        int win = Integer.MAX_VALUE;
+        int exitWin = 0;
+        for (int i = 0; i < end; i++) {
+            int move = moves[i];
+            if (Move.isCapture(move) && Position.typeOf(position.pieceAt(Move.to(move))) == Position.KING) {
+                safe = true;
+                win = 1;
+                break;
+            }
+            if (Move.isCapture(move) || Move.isPromotion(move)) {
+                int undo = position.makeMove(move);
+                int stored = tablebase.probe(position);
+                position.unmakeMove(move, undo);
+                if (stored == Tablebase.MISSING) {
+                    throw new IllegalStateException(
+                            "no table after " + Move.toUci(move) + " from " + Tablebase.name(slots));
+                }
+                int plies = stored - 1;
+                if (stored == 0) {
+                    safe = true;
+                } else if ((plies & 1) == 0) {
+                    safe = true;
+                    win = Math.min(win, plies + 1);
+                } else {
+                    exitWin = Math.max(exitWin, plies);
+                }
+            } else {
+                inside++;
+            }
+        }
+        counts[index] = (byte) (inside + (safe ? 1 : 0));
+        exitWins[index] = (byte) exitWin;
+        if (win != Integer.MAX_VALUE) {
+            decide(index, win);
+        } else if (counts[index] == 0) {
+            decide(index, end == 0 ? 0 : exitWin + 1);
+        }
+    }
+
+    /**
+     * Takes back every move that could have led to the position at {@code index}, now known to be decided in
+     * {@code plies}, and updates each predecessor.
+     */
+    private void propagate(int index, int plies) {
+        setUp(index);
+        int mover = position.sideToMove ^ 1;
+        position.setSideToMove(mover);
+        long occupied = position.occupied;
+        for (int i = 0; i < slots.length; i++) {
+            int piece = slots[i];
+            if (Position.colorOf(piece) != mover) {
+                continue;
+            }
+            int to = squares[i];
+            for (long from = sources(piece, to, occupied); from != 0; from &= from - 1) {
+                int sq = Long.numberOfTrailingZeros(from);
+                position.remove(piece, to);
+                position.put(piece, sq);
+                int predecessor = Tablebase.index(slots, position, false);
+                position.remove(piece, sq);
+                position.put(piece, to);
+                if (values[predecessor] != 0) {
+                    continue;
+                }
+                if ((plies & 1) == 0) {
+                    decide(predecessor, plies + 1);
+                } else if (--counts[predecessor] == 0) {
+                    decide(predecessor, Math.max(plies, exitWins[predecessor] & 0xFF) + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Squares {@code piece} could have come from to reach {@code to} without capturing.
+     */
+    private static long sources(int piece, int to, long occupied) {
+        long empty = ~occupied;
+        switch (Position.typeOf(piece)) {
+            case Position.KING:
+                return Attacks.KING[to] & empty;
+            case Position.KNIGHT:
+                return Attacks.KNIGHT[to] & empty;
+            case Position.BISHOP:
+                return Attacks.bishop(to, occupied) & empty;
+            case Position.ROOK:
+                return Attacks.rook(to, occupied) & empty;
+            case Position.QUEEN:
+                return Attacks.queen(to, occupied) & empty;
+            default:
+                int back = Position.colorOf(piece) == Position.WHITE ? -8 : 8;
+                int from = to + back;
+                if (from < 8 || from >= 56 || (occupied & (1L << from)) != 0) {
+                    return 0;
+                }
+                long sources = 1L << from;
+                int doubleRank = Position.colorOf(piece) == Position.WHITE ? 3 : 4;
+                if (to >>> 3 == doubleRank && (occupied & (1L << (from + back))) == 0) {
+                    sources |= 1L << (from + back);
+                }
+                return sources;
+        }
+    }
+
+    private void decide(int index, int plies) {
+        if (plies + 1 > 255) {
+            throw new IllegalStateException(Tablebase.name(slots) + " has a result too far away to store");
+        }
+        int mark = pending[index] & 0xFF;
+        if (mark == 0 || plies + 1 < mark) {
+            pending[index] = (byte) (plies + 1);
+            maxPending = Math.max(maxPending, plies + 1);
+        }
+    }
+
+    /**
+     * Puts the position at {@code index} on the board, returning false if no legal position has that index.
+     */
+    private boolean setUp(int index) {
+        if (placed) {
+            for (int i = 0; i < slots.length; i++) {
+                position.remove(slots[i], squares[i]);
+            }
+            placed = false;
+        }
+        int rest = index;
+        for (int i = slots.length - 1; i > 0; i--) {
+            squares[i] = rest & 63;
+            rest >>>= 6;
+        }
+        int king = rest & 31;
+        squares[0] = (king >>> 2) * 8 + (king & 3);
+        long used = 0;
+        for (int i = 0; i < slots.length; i++) {
+            long bit = 1L << squares[i];
+            if ((used & bit) != 0
+                    || i > 0 && slots[i] == slots[i - 1] && squares[i] < squares[i - 1]
+                    || Position.typeOf(slots[i]) == Position.PAWN && (squares[i] < 8 || squares[i] >= 56)) {
+                return false;
+            }
+            used |= bit;
+        }
+        for (int i = 0; i < slots.length; i++) {
+            position.put(slots[i], squares[i]);
+        }
+        position.setSideToMove(rest >>> 5);
+        placed = true;
+        return true;
+    }
+}
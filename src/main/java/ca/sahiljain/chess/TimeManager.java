@@ -0,0 +1,66 @@
+package ca.sahiljain.chess;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides between iterations whether another one is worth starting. A search gets a soft limit, after which no
+ * new iteration starts, and a hard limit at which the running iteration is abandoned. The soft limit doubles
+ * while the best move is still changing, and an iteration is only started if its predicted length fits before
+ * the hard limit.
+ */
+final class TimeManager {
+
+    private static final long MOVE_OVERHEAD_MS = 50;
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    private static final double DEFAULT_BRANCHING = 4;
+
+    private final long startTime;
+    private final long softLimit;
+    private final long hardLimit;
+
+    TimeManager(SearchLimits limits, int color, long startTime) {
+        this.startTime = startTime;
+        long clock = limits.time(color);
+        long soft;
+        long hard;
+        if (limits.moveTime > 0) {
+            soft = limits.moveTime;
+            hard = limits.moveTime;
+        } else if (clock > 0) {
+            long available = Math.max(1, clock - MOVE_OVERHEAD_MS);
+            int movesToGo = limits.movesToGo > 0 ? limits.movesToGo : DEFAULT_MOVES_TO_GO;
+            soft = Math.min(available, available / movesToGo + limits.increment(color) * 3 / 4);
+            hard = Math.min(available, soft * 4);
+        } else {
+            soft = limits.maxTime;
+            hard = limits.maxTime;
+        }
+        softLimit = Math.min(soft, limits.maxTime);
+        hardLimit = Math.min(hard, limits.maxTime);
+    }
+
+    /**
+     * Milliseconds left before the hard limit.
+     */
+    long remaining() {
+        return startTime + hardLimit - System.currentTimeMillis();
+    }
+
+    /**
+     * @param lastIteration     wall time of the iteration that just finished, in nanoseconds
+     * @param previousIteration wall time of the one before it, or 0
+     * @param unstable          whether the last iteration changed the best move
+     */
+    boolean canStartIteration(long lastIteration, long previousIteration, boolean unstable) {
+        long elapsed = System.currentTimeMillis() - startTime;
+        long soft = unstable ? Math.min(hardLimit, softLimit * 2) : softLimit;
+        if (elapsed >= soft) {
+            return false;
+        }
+        double branching = previousIteration > TimeUnit.MILLISECONDS.toNanos(1)
+                ? Math.max(1.5, Math.min(8, (double) lastIteration / previousIteration))
+                : DEFAULT_BRANCHING;
+        long predicted = TimeUnit.NANOSECONDS.toMillis((long) (lastIteration * branching));
+        return elapsed + predicted <= hardLimit;
+    }
+}
@@ -0,0 +1,96 @@
+package ca.sahiljain.chess;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size hash table of search results, shared by all searches without locking.
+ *
+ * Each entry is two longs: the packed data and the position key XORed with that data. A reader only accepts an
+ * entry whose two halves XOR back to its key, so an entry torn by a concurrent write reads as a miss.
+ * Entries come in buckets of two: the first slot keeps the deepest result, the second is always replaced.
+ */
+final class TranspositionTable {
+
+    static final int EXACT = 1;
+    static final int LOWER = 2;
+    static final int UPPER = 3;
+
+    private static final int ENTRY_BYTES = 16;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private volatile int age;
+
+    TranspositionTable(int sizeMb) {
+        long entries = Long.highestOneBit(Math.max(2, (long) sizeMb * 1024 * 1024 / ENTRY_BYTES));
+        if (entries > 1 << 30) {
+            throw new IllegalArgumentException("transposition table too large: " + sizeMb + "MB");
+        }
+        keys = new long[(int) entries];
+        data = new long[(int) entries];
+        bucketMask = (int) (entries / 2) - 1;
+    }
+
+    /**
+     * Starts a new search generation, which makes entries from older searches the first to be replaced.
+     */
+    void newSearch() {
+        age = (age + 1) & 0x3F;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * Returns the packed entry stored for {@code key}, or 0 if there is none.
+     */
+    long probe(long key) {
+        int index = ((int) key & bucketMask) << 1;
+        for (int i = index; i < index + 2; i++) {
+            long entry = data[i];
+            if ((keys[i] ^ entry) == key && entry != 0) {
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    void store(long key, int move, int score, int depth, int bound) {
+        int index = ((int) key & bucketMask) << 1;
+        long entry = (move & 0xFFFFL)
+                | (score & 0xFFFFFFFFL) << 16
+                | (long) (depth & 0xFF) << 48
+                | (long) bound << 56
+                | (long) age << 58;
+        long first = data[index];
+        int slot = index + 1;
+        if ((keys[index] ^ first) == key || depth(first) <= depth || age(first) != age) {
+            slot = index;
+        }
+        data[slot] = entry;
+        keys[slot] = key ^ entry;
+    }
+
+    static int move(long entry) {
+        return (int) (entry & 0xFFFF);
+    }
+
+    static int score(long entry) {
+        return (int) (entry >>> 16);
+    }
+
+    static int depth(long entry) {
+        return (int) (entry >>> 48) & 0xFF;
+    }
+
+    static int bound(long entry) {
+        return (int) (entry >>> 56) & 0x3;
+    }
+
+    private static int age(long entry) {
+        return (int) (entry >>> 58);
+    }
+}
@@ -0,0 +1,93 @@
+package ca.sahiljain.chess;
+
+/**
+ * The text of the {@code /bestmove} protocol, borrowed from UCI: a game comes in as a start position and the moves
+ * played from it, as in UCI's {@code position} command, and the answer goes out as {@code info} and
+ * {@code bestmove} lines. Clients send moves instead of boards, and the moves give the search the game's
+ * {@link Position#history} for repetitions.
+ */
+final class Uci {
+
+    private Uci() {
+    }
+
+    /**
+     * Plays the UCI moves in {@code moves}, separated by spaces or commas, from {@code start}, which ends up as the
+     * position after the last one.
+     *
+     * @throws IllegalArgumentException if a move is not one of the position it is played in
+     */
+    static Position replay(Position start, CharSequence moves) {
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        int number = 0;
+        int i = 0;
+        int length = moves.length();
+        while (i < length) {
+            while (i < length && isSeparator(moves.charAt(i))) {
+                i++;
+            }
+            int end = i;
+            while (end < length && !isSeparator(moves.charAt(end))) {
+                end++;
+            }
+            if (end > i) {
+                number++;
+                if (!start.hasKing(start.sideToMove) || !start.hasKing(start.sideToMove ^ 1)) {
+                    throw new IllegalArgumentException("move " + number + " comes after the game is over");
+                }
+                int move = Move.fromUci(start, moves, i, end, buffer);
+                if (move == Move.NONE) {
+                    throw new IllegalArgumentException("move " + number + describe(moves, i, end)
+                            + " is not a move in the position");
+                }
+                start.playMove(move);
+            }
+            i = end;
+        }
+        return start;
+    }
+
+    /**
+     * The answer for {@code result}: an {@code info} line with depth, score, nodes and principal variation, then
+     * the {@code bestmove} line, with the expected reply to ponder when there is one. A score of a won or lost
+     * game is given in moves until a king is captured.
+     */
+    static String bestMove(SearchResult result) {
+        StringBuilder builder = new StringBuilder(64 + 6 * result.pv.length);
+        builder.append("info depth ").append(result.depth).append(" score ");
+        if (Math.abs(result.score) >= Search.WIN_BOUND) {
+            int plies = Search.WIN - Math.abs(result.score);
+            builder.append("mate ").append(result.score > 0 ? (plies + 1) / 2 : -(plies / 2));
+        } else {
+            builder.append("cp ").append(result.score);
+        }
+        builder.append(" nodes ").append(result.nodes).append(" pv");
+        for (int move : result.pv) {
+            builder.append(' ').append(Move.toUci(move));
+        }
+        builder.append("\nbestmove ").append(Move.toUci(result.move));
+        if (result.pv.length > 1) {
+            builder.append(" ponder ").append(Move.toUci(result.pv[1]));
+        }
+        return builder.append('\n').toString();
+    }
+
+    /**
+     * The move as given, to quote in an error, if it looks like one.
+     */
+    private static String describe(CharSequence moves, int start, int end) {
+        if (end - start > 5) {
+            return "";
+        }
+        for (int i = start; i < end; i++) {
+            if (!Character.isLetterOrDigit(moves.charAt(i)) || moves.charAt(i) > 0x7f) {
+                return "";
+            }
+        }
+        return " (" + moves.subSequence(start, end) + ")";
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == ',' || c == '+' || c == '\t' || c == '\n';
+    }
+}
@@ -0,0 +1,35 @@
+package ca.sahiljain.chess;
+
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing of a {@link Position}. The seed is fixed so keys are stable across runs.
+ */
+final class Zobrist {
+
+    static final long[][] PIECES = new long[12][64];
+    static final long SIDE;
+    // indexed by the castling rights of a Position; no rights hash to 0
+    static final long[] CASTLING = new long[16];
+    // indexed by the file of the en passant square
+    static final long[] EN_PASSANT = new long[8];
+
+    static {
+        Random random = new Random(0x2F8A71C3E4B5D609L);
+        for (int piece = 0; piece < 12; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                PIECES[piece][sq] = random.nextLong();
+            }
+        }
+        SIDE = random.nextLong();
+        for (int rights = 1; rights < 16; rights++) {
+            CASTLING[rights] = random.nextLong();
+        }
+        for (int file = 0; file < 8; file++) {
+            EN_PASSANT[file] = random.nextLong();
+        }
+    }
+
+    private Zobrist() {
+    }
+}